@@ -0,0 +1,79 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.Candidate;
+import gov.nasa.jpf.cv.RandomDFA;
+
+import java.util.Random;
+import java.util.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds a Candidate from a random automaton, and runs random
+ * sequences on it, the way the teachers and the conformance tests use
+ * a conjecture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CandidateBenchmark {
+  private static final int SEQUENCES = 1024;
+
+  @Param({ "10", "1000", "10000" })
+  public int states;
+
+  @Param({ "2", "20", "200" })
+  public int symbols;
+
+  private RandomDFA dfa_;
+
+  private Candidate candidate_;
+
+  private Vector<String>[] sequences_;
+
+  @Setup
+  public void setUp() {
+    dfa_ = new RandomDFA(states, symbols, 42);
+    candidate_ = dfa_.toCandidate();
+
+    Random random = new Random(42);
+    sequences_ = new Vector[SEQUENCES];
+    for (int i = 0; i < SEQUENCES; i++) {
+      sequences_[i] = dfa_.randomSequence(random, 50);
+    }
+  }
+
+  @Benchmark
+  public Candidate build() {
+    return (dfa_.toCandidate());
+  }
+
+  /**
+   * Runs each sequence until it reaches the error state
+   *
+   * @return the number of symbols read
+   */
+  @Benchmark
+  public int run() {
+    int steps = 0;
+    for (int i = 0; i < sequences_.length; i++) {
+      int state = 0;
+      for (int j = 0; (j < sequences_[i].size()) && (state != -1); j++) {
+        state = candidate_.getTransition(state, sequences_[i].get(j));
+        steps++;
+      }
+    }
+    return (steps);
+  }
+}
@@ -0,0 +1,61 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.AutomatonEquivalence;
+import gov.nasa.jpf.cv.RandomDFA;
+
+import java.util.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a random automaton with itself, which has to visit all of
+ * it, and with another one, which usually stops after a few pairs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EquivalenceBenchmark {
+  @Param({ "10", "1000", "10000" })
+  public int states;
+
+  @Param({ "2", "20", "200" })
+  public int symbols;
+
+  private Vector<String> alphabet_;
+
+  private int[][] table_;
+
+  private int[][] same_;
+
+  private int[][] other_;
+
+  @Setup
+  public void setUp() {
+    RandomDFA dfa = new RandomDFA(states, symbols, 42);
+    alphabet_ = dfa.getAlphabet();
+    table_ = AutomatonEquivalence.toTable(dfa.toCandidate(), alphabet_);
+    same_ = AutomatonEquivalence.toTable(dfa.toFSM(), alphabet_);
+    other_ = AutomatonEquivalence.toTable(new RandomDFA(states, symbols, 43).toFSM(), alphabet_);
+  }
+
+  @Benchmark
+  public Vector<String> equivalent() {
+    return (AutomatonEquivalence.distinguish(table_, same_, alphabet_));
+  }
+
+  @Benchmark
+  public Vector<String> different() {
+    return (AutomatonEquivalence.distinguish(table_, other_, alphabet_));
+  }
+}
@@ -0,0 +1,58 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.Candidate;
+import gov.nasa.jpf.cv.DFATeacher;
+import gov.nasa.jpf.cv.RandomDFA;
+import gov.nasa.jpf.cv.SETException;
+import gov.nasa.jpf.cv.SETLearner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Learns a random automaton with the SET learner, eagerly and lazily.
+ * The teacher answers from the automaton, so this is the cost of the
+ * table and of analyzing the counterexamples.  Larger automata than
+ * the default ones are given with -p, e.g. -p states=10000 -p symbols=200.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LearnerBenchmark {
+  @Param({ "10", "100", "1000" })
+  public int states;
+
+  @Param({ "2", "20" })
+  public int symbols;
+
+  @Param({ "false", "true" })
+  public boolean lazy;
+
+  private RandomDFA dfa_;
+
+  @Setup
+  public void setUp() {
+    dfa_ = new RandomDFA(states, symbols, 42);
+  }
+
+  @Benchmark
+  public Candidate learn() throws SETException {
+    SETLearner learner = new SETLearner(new DFATeacher(dfa_.toFSM(), dfa_.getAlphabet()));
+    learner.setLazy(lazy);
+    return ((Candidate) learner.getAssumption());
+  }
+}
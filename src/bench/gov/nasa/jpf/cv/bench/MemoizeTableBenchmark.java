@@ -0,0 +1,86 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.MemoizeTable;
+import gov.nasa.jpf.cv.RandomDFA;
+
+import java.util.Random;
+import java.util.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stores and looks up the answers to random sequences in a MemoizeTable,
+ * the way a teacher does during learning: the table is first filled
+ * with the answers to a number of sequences, which are then looked up
+ * again, mixed with as many new ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MemoizeTableBenchmark {
+  private static final int SEQUENCES = 4096;
+
+  @Param({ "10", "1000", "10000" })
+  public int states;
+
+  @Param({ "2", "20", "200" })
+  public int symbols;
+
+  @Param({ "10", "50" })
+  public int length;
+
+  private Vector<String>[] known_;
+
+  private boolean[] answers_;
+
+  private Vector<String>[] lookups_;
+
+  private MemoizeTable table_;
+
+  @Setup
+  public void setUp() {
+    RandomDFA dfa = new RandomDFA(states, symbols, 42);
+    Random random = new Random(42);
+
+    known_ = new Vector[SEQUENCES];
+    answers_ = new boolean[SEQUENCES];
+    lookups_ = new Vector[2 * SEQUENCES];
+    table_ = new MemoizeTable();
+    for (int i = 0; i < SEQUENCES; i++) {
+      known_[i] = dfa.randomSequence(random, length);
+      answers_[i] = !dfa.accepts(known_[i]);
+      table_.setResult(known_[i], answers_[i]);
+
+      lookups_[2 * i] = known_[i];
+      lookups_[2 * i + 1] = dfa.randomSequence(random, length);
+    }
+  }
+
+  @Benchmark
+  public MemoizeTable fill() {
+    MemoizeTable table = new MemoizeTable();
+    for (int i = 0; i < SEQUENCES; i++) {
+      table.setResult(known_[i], answers_[i]);
+    }
+    return (table);
+  }
+
+  @Benchmark
+  public void lookup(Blackhole hole) {
+    for (int i = 0; i < lookups_.length; i++) {
+      hole.consume(table_.getResult(lookups_[i]));
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.DFATeacher;
+import gov.nasa.jpf.cv.LearningMetrics;
+import gov.nasa.jpf.cv.RandomDFA;
+import gov.nasa.jpf.cv.SETException;
+import gov.nasa.jpf.cv.SETLearner;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the heap the SET learner's table retains once learning is
+ * done, per cell of the table (a row of S or SA times a column of E).
+ * The heap is measured after a full collection, with the learner still
+ * reachable, so run it with a fixed heap size and one thread.  The
+ * allocation rate of learning is reported by -prof gc on
+ * LearnerBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TableFootprintBenchmark {
+  @Param({ "10", "100", "1000" })
+  public int states;
+
+  @Param({ "2", "20" })
+  public int symbols;
+
+  private RandomDFA dfa_;
+
+  /**
+   * The results of an iteration, which JMH reports next to the time
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    public long cells;
+
+    public long retainedBytes;
+
+    public double bytesPerCell;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+      cells = 0;
+      retainedBytes = 0;
+      bytesPerCell = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    dfa_ = new RandomDFA(states, symbols, 42);
+  }
+
+  @Benchmark
+  public SETLearner learn(Footprint footprint) throws SETException {
+    DFATeacher teacher = new DFATeacher(dfa_.toFSM(), dfa_.getAlphabet());
+    long before = usedHeap();
+    SETLearner learner = new SETLearner(teacher);
+    learner.getAssumption();
+    long after = usedHeap();
+
+    footprint.cells = (LearningMetrics.getGauge("table.S") + LearningMetrics.getGauge("table.SA"))
+        * LearningMetrics.getGauge("table.E");
+    footprint.retainedBytes = after - before;
+    footprint.bytesPerCell = (double) footprint.retainedBytes / Math.max(1, footprint.cells);
+    return (learner);
+  }
+
+  /**
+   * Gets the heap in use after collecting until it stops shrinking
+   */
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      long now = runtime.totalMemory() - runtime.freeMemory();
+      if (now >= used) {
+        break;
+      }
+      used = now;
+    }
+    return (used);
+  }
+}
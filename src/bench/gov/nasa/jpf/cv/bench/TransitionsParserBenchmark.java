@@ -0,0 +1,48 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.FSM;
+import gov.nasa.jpf.cv.RandomDFA;
+import gov.nasa.jpf.cv.TransitionsParser;
+
+import java.io.StringReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the transitions of a random automaton into an FSM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransitionsParserBenchmark {
+  @Param({ "10", "1000", "10000" })
+  public int states;
+
+  @Param({ "2", "20", "200" })
+  public int symbols;
+
+  private String transitions_;
+
+  @Setup
+  public void setUp() {
+    transitions_ = new RandomDFA(states, symbols, 42).toTransitions();
+  }
+
+  @Benchmark
+  public FSM parse() {
+    FSM fsm = new FSM();
+    new TransitionsParser(new StringReader(transitions_)).parse(fsm);
+    return (fsm);
+  }
+}
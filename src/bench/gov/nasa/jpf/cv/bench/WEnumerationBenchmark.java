@@ -0,0 +1,68 @@
+package gov.nasa.jpf.cv.bench;
+
+import gov.nasa.jpf.cv.RandomDFA;
+import gov.nasa.jpf.cv.WEnumeration;
+
+import java.util.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Enumerates the W-method's tests P.X^k.W for a random automaton, with
+ * its access sequences as P and lambda and each symbol as W.  There are
+ * states * symbols^k * (symbols + 1) tests, so large automata only go
+ * with small k.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WEnumerationBenchmark {
+  @Param({ "10", "100" })
+  public int states;
+
+  @Param({ "2", "20" })
+  public int symbols;
+
+  @Param({ "0", "1", "2" })
+  public int k;
+
+  private Vector<Vector<String>> P_;
+
+  private Vector<Vector<String>> W_;
+
+  private Vector<String> X_;
+
+  @Setup
+  public void setUp() {
+    RandomDFA dfa = new RandomDFA(states, symbols, 42);
+    P_ = dfa.getAccessSequences();
+    X_ = dfa.getAlphabet();
+
+    W_ = new Vector<Vector<String>>();
+    W_.add(new Vector<String>());
+    for (String symbol : X_) {
+      Vector<String> w = new Vector<String>();
+      w.add(symbol);
+      W_.add(w);
+    }
+  }
+
+  @Benchmark
+  public void enumerate(Blackhole hole) {
+    for (WEnumeration tests = new WEnumeration(P_, W_, X_, k); tests.hasMoreElements();) {
+      hole.consume(tests.nextElement());
+    }
+  }
+}
@@ -0,0 +1,290 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.JPF;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Default implementations shared by the teachers.  Teachers that can
+ * answer a batch of queries better than one at a time override
+ * queryBatch.
+ */
+public abstract class AbstractTeacher implements MinimallyAdequateTeacher {
+  /**
+   * The answers to the queries run so far
+   */
+  protected MemoizeTable memoized_ = new MemoizeTable();
+
+  /**
+   * The answers of earlier runs, or null if they are not kept
+   */
+  protected QueryStore store_ = null;
+
+  /**
+   * Tests candidates before the oracles run, or null
+   */
+  protected ConformanceTester tester_ = null;
+
+  /**
+   * The verdicts of the oracles on the candidates conjectured so far,
+   * by their canonical form: a counterexample, or null if the candidate
+   * was correct
+   */
+  protected HashMap<CanonicalCandidate, Vector> verdicts_ = new HashMap<CanonicalCandidate, Vector>();
+
+  /**
+   * Gets the answers to the queries run so far
+   *
+   * @return the memoize table
+   */
+  public MemoizeTable getMemoizeTable() {
+    return (memoized_);
+  }
+
+  /**
+   * Replaces the answers known to the teacher, e.g. with the ones of
+   * an earlier run
+   *
+   * @param memoized the memoize table
+   */
+  public void setMemoizeTable(MemoizeTable memoized) {
+    memoized_ = memoized;
+  }
+
+  /**
+   * Gets the store that keeps the answers across runs
+   *
+   * @return the store, or null if there is none
+   */
+  public QueryStore getQueryStore() {
+    return (store_);
+  }
+
+  /**
+   * Sets the store that keeps the answers across runs
+   *
+   * @param store the store, or null
+   */
+  public void setQueryStore(QueryStore store) {
+    store_ = store;
+  }
+
+  /**
+   * Sets the tests a candidate has to pass before the oracles run
+   *
+   * @param tester the tester, or null to run the oracles right away
+   */
+  public void setConformanceTester(ConformanceTester tester) {
+    tester_ = tester;
+  }
+
+  /**
+   * Gets the tests a candidate has to pass before the oracles run
+   *
+   * @return the tester, or null if there is none
+   */
+  public ConformanceTester getConformanceTester() {
+    return (tester_);
+  }
+
+  /**
+   * Tests a candidate against the answers to membership queries, which
+   * is cheaper than running the oracles
+   *
+   * @param candidate the candidate
+   *
+   * @return a counterexample, or null if the tests found none
+   */
+  protected Vector testConformance(Candidate candidate) throws SETException {
+    if (tester_ == null) {
+      return (null);
+    }
+
+    Vector counterexample = tester_.test(this, candidate);
+    if (counterexample != null) {
+      LearningMetrics.count("oracle.conformance_counterexamples");
+      this.println("Conformance tests found counterexample " + counterexample);
+    }
+    return (counterexample);
+  }
+
+  /**
+   * Gets the canonical form of a candidate over the teacher's alphabet
+   */
+  protected CanonicalCandidate canonicalize(Candidate candidate) {
+    Vector<String> alphabet = new Vector<String>();
+    for (Iterator symbols = this.getAlphabet(); symbols.hasNext();) {
+      alphabet.add((String) symbols.next());
+    }
+    return (CanonicalCandidate.minimize(candidate, alphabet));
+  }
+
+  /**
+   * Gets the verdict of the oracles on a candidate conjectured before,
+   * or on one equivalent to it
+   *
+   * @param canonical the canonical form of the candidate, which must be
+   *          in verdicts_
+   *
+   * @return a copy of the counterexample, or null if the candidate was
+   *         correct
+   */
+  protected Vector recallVerdict(CanonicalCandidate canonical) {
+    LearningMetrics.count("oracle.recalled_verdicts");
+    this.println("Recalled the verdict on " + canonical);
+    Vector counterexample = verdicts_.get(canonical);
+    return ((counterexample == null) ? null : new Vector(counterexample));
+  }
+
+  /**
+   * Keeps the verdict of the oracles on a candidate.  The learners may
+   * change the counterexample they are given, so a copy is kept.
+   */
+  protected void recordVerdict(CanonicalCandidate canonical, Vector counterexample) {
+    verdicts_.put(canonical, (counterexample == null) ? null : new Vector(counterexample));
+  }
+
+  /**
+   * Counts a conjecture in the learning metrics, with the size of the
+   * memoize table at the time
+   */
+  protected void countConjecture() {
+    LearningMetrics.count("oracle.conjectures");
+    LearningMetrics.set("memoize.nodes", memoized_.countNodes());
+    LearningMetrics.set("memoize.bytes", memoized_.estimateBytes());
+  }
+
+  /**
+   * Runs JPF, adding the time it took and the states it visited to
+   * the learning metrics
+   *
+   * @param jpf the JPF instance
+   * @param kind what the run is for, e.g. query or oracle1
+   */
+  protected void runJPF(JPF jpf, String kind) {
+    StateCountListener states = new StateCountListener();
+    jpf.addListener(states);
+
+    long start = System.currentTimeMillis();
+    jpf.run();
+    LearningMetrics.time("jpf." + kind, System.currentTimeMillis() - start);
+    LearningMetrics.count("jpf." + kind + ".new_states", states.getNewStates());
+    LearningMetrics.count("jpf." + kind + ".visited_states", states.getVisitedStates());
+  }
+
+  /**
+   * Looks up the answer to a query in the memoize table, and then in
+   * the query store.  Answers from the store are memoized.
+   *
+   * @param sequence the query
+   *
+   * @return true if the sequence is violating, false if it is not, or
+   *         null if the query has to be run
+   */
+  protected Boolean lookup(AbstractList<String> sequence) {
+    Boolean violating = memoized_.getResult(sequence);
+    if (violating != null) {
+      LearningMetrics.count("cache.memo");
+    } else if (store_ != null) {
+      violating = store_.getResult(sequence);
+      if (violating != null) {
+        LearningMetrics.count("cache.store");
+        memoized_.setResult(sequence, violating.booleanValue());
+      }
+    }
+    if (violating == null) {
+      LearningMetrics.count("cache.miss");
+    }
+    return (violating);
+  }
+
+  /**
+   * Records the answer to a query that was run in the memoize table and
+   * the query store
+   *
+   * @param sequence the query
+   * @param violating true if the sequence is violating
+   */
+  protected void record(AbstractList<String> sequence, boolean violating) {
+    this.record(sequence, violating, null);
+  }
+
+  /**
+   * Records the answer to a query that was run, with the methods JPF
+   * executed for it, which an incremental query store needs
+   *
+   * @param sequence the query
+   * @param violating true if the sequence is violating
+   * @param executed the executed methods, or null if they are not
+   *        known
+   */
+  protected void record(AbstractList<String> sequence, boolean violating,
+      Collection<String> executed) {
+    memoized_.setResult(sequence, violating);
+    if (store_ != null) {
+      store_.setResult(sequence, violating, executed);
+    }
+  }
+
+  /**
+   * Determines if the queries that are run have to report the methods
+   * JPF executed
+   */
+  protected boolean isTrackingMethods() {
+    return ((store_ != null) && store_.isIncremental());
+  }
+
+  /**
+   * Answers a batch of queries by asking them one at a time, in the
+   * order given
+   *
+   * @param sequences the queries
+   *
+   * @return the answer to each query, in the order of the collection
+   */
+  public boolean[] queryBatch(Collection<AbstractList<String>> sequences)
+      throws SETException {
+    boolean[] results = new boolean[sequences.size()];
+
+    int i = 0;
+    for (Iterator<AbstractList<String>> queries = sequences.iterator(); queries.hasNext(); i++) {
+      results[i] = this.query(queries.next());
+    }
+
+    return (results);
+  }
+
+  /**
+   * Orders a batch of queries shortest first.  Queries of the same
+   * length keep their order in the batch.
+   *
+   * @param sequences the queries
+   *
+   * @return the indices of the queries, shortest first
+   */
+  protected static int[] shortestFirst(final List<AbstractList<String>> sequences) {
+    Integer[] order = new Integer[sequences.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = new Integer(i);
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer i1, Integer i2) {
+        return (sequences.get(i1.intValue()).size() - sequences.get(i2.intValue()).size());
+      }
+    });
+
+    int[] toReturn = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      toReturn[i] = order[i].intValue();
+    }
+    return (toReturn);
+  }
+}
@@ -0,0 +1,213 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
+import gov.nasa.jpf.jvm.bytecode.InvokeInstruction;
+import gov.nasa.jpf.jvm.choice.sc.SCEvent;
+import gov.nasa.jpf.jvm.choice.sc.SCEventGenerator;
+import gov.nasa.jpf.search.DFSearch;
+import gov.nasa.jpf.search.Search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Vector;
+
+/**
+ * Records the symbols of an alphabet a JPF run goes through, as they
+ * happen, so that the counterexample of a run is known without JPF
+ * storing the steps of its path (vm.store_steps).  The symbols are
+ * either the names of the methods invoked, as SafetyListener sees them,
+ * or the statechart events dispatched, with their arguments, as
+ * SCSafetyListener sees them.
+ *
+ * The trace is kept as a tree: every symbol recorded is a node that
+ * points to the node before it, and every state of the search to the
+ * node its path ends in.  Backtracking or restoring a state just goes
+ * back to that node.  The trace up to the first property violation is
+ * the counterexample.
+ *
+ * With a depth first search, a state the search backtracks from is
+ * never seen again, so the states are kept by depth, and the nodes
+ * after the one backtracked to are reused: the tree is then just the
+ * trace of the current path.  Other searches may restore any state
+ * they have seen, so their states are kept by id, and their nodes for
+ * the whole run.
+ */
+public class AlphabetTraceRecorder extends ListenerAdapter {
+  private final SymbolTable symbols_;
+
+  /**
+   * true to record statechart events, false for methods
+   */
+  private final boolean events_;
+
+  /**
+   * The symbol of each node, the node before it, and the length of the
+   * trace that ends in it.  Node 0 is the empty trace.
+   */
+  private int[] symbol_ = new int[1024];
+
+  private int[] parent_ = new int[1024];
+
+  private int[] length_ = new int[1024];
+
+  private int nodes_ = 1;
+
+  /**
+   * The node the current path ends in
+   */
+  private int current_ = 0;
+
+  /**
+   * true if states are kept by depth, for a depth first search
+   */
+  private boolean byDepth_ = false;
+
+  /**
+   * The node of each state, by depth or by state id, -1 for states not
+   * seen
+   */
+  private int[] states_ = new int[1024];
+
+  private int[] counterexample_ = null;
+
+  /**
+   * Creates a recorder
+   *
+   * @param alphabet the symbols to record
+   * @param events true to record the statechart events dispatched,
+   *        false for the methods invoked
+   */
+  public AlphabetTraceRecorder(Collection<String> alphabet, boolean events) {
+    symbols_ = new SymbolTable(alphabet.iterator());
+    events_ = events;
+    Arrays.fill(states_, -1);
+  }
+
+  public void instructionExecuted(JVM vm) {
+    if (!events_ && !vm.getSystemState().isIgnored()) {
+      Instruction instr = vm.getLastInstruction();
+      if ((instr instanceof InvokeInstruction)
+          && !vm.getLastThreadInfo().isInstructionSkipped()) {
+        this.record(((InvokeInstruction) instr).getInvokedMethod().getName());
+      }
+    }
+  }
+
+  public void choiceGeneratorAdvanced(JVM vm) {
+    ChoiceGenerator<?> cg = vm.getChoiceGenerator();
+    if (events_ && (cg instanceof SCEventGenerator)) {
+      SCEvent event = ((SCEventGenerator) cg).getNextChoice();
+      this.record(SCConverter.addParameters(event.getMethodName(), event.getArguments()));
+    }
+  }
+
+  private void record(String name) {
+    int symbol = symbols_.getId(name);
+    if (symbol == -1) {
+      return;
+    }
+
+    if (nodes_ == symbol_.length) {
+      int size = 2 * nodes_;
+      symbol_ = Arrays.copyOf(symbol_, size);
+      parent_ = Arrays.copyOf(parent_, size);
+      length_ = Arrays.copyOf(length_, size);
+    }
+    symbol_[nodes_] = symbol;
+    parent_[nodes_] = current_;
+    length_[nodes_] = length_[current_] + 1;
+    current_ = nodes_++;
+  }
+
+  public void searchStarted(Search search) {
+    byDepth_ = (search instanceof DFSearch);
+    this.saveState(search);
+  }
+
+  // by id, a state that was visited before keeps the node of its first
+  // path, since the search doesn't go on from it
+  public void stateAdvanced(Search search) {
+    if (byDepth_ || search.isNewState()) {
+      this.saveState(search);
+    }
+  }
+
+  public void stateBacktracked(Search search) {
+    this.restoreState(search);
+    if (byDepth_) {
+      // nothing after the current node is on the search stack any more
+      nodes_ = current_ + 1;
+    }
+  }
+
+  public void stateRestored(Search search) {
+    this.restoreState(search);
+  }
+
+  public void propertyViolated(Search search) {
+    if (counterexample_ == null) {
+      counterexample_ = this.toArray(current_);
+    }
+  }
+
+  private int getKey(Search search) {
+    return (byDepth_ ? search.getDepth() : search.getStateId());
+  }
+
+  private void saveState(Search search) {
+    int id = this.getKey(search);
+    if (id < 0) {
+      return;
+    }
+    if (id >= states_.length) {
+      int length = states_.length;
+      states_ = Arrays.copyOf(states_, Math.max(2 * length, id + 1));
+      Arrays.fill(states_, length, states_.length, -1);
+    }
+    states_[id] = current_;
+  }
+
+  // only the state the search started from can be one that wasn't
+  // saved, and nothing was recorded before it
+  private void restoreState(Search search) {
+    int id = this.getKey(search);
+    current_ = ((id >= 0) && (id < states_.length) && (states_[id] != -1)) ? states_[id] : 0;
+  }
+
+  private int[] toArray(int node) {
+    int[] trace = new int[length_[node]];
+    for (int i = trace.length - 1; i >= 0; i--) {
+      trace[i] = symbol_[node];
+      node = parent_[node];
+    }
+    return (trace);
+  }
+
+  /**
+   * Gets the trace of the current path
+   */
+  public Vector<String> getTrace() {
+    return (this.toSymbols(this.toArray(current_)));
+  }
+
+  /**
+   * Gets the counterexample
+   *
+   * @return the trace up to the first property violation, or null if
+   *         there was none
+   */
+  public Vector<String> getCounterexample() {
+    return ((counterexample_ == null) ? null : this.toSymbols(counterexample_));
+  }
+
+  private Vector<String> toSymbols(int[] trace) {
+    Vector<String> symbols = new Vector<String>(trace.length);
+    for (int symbol : trace) {
+      symbols.add(symbols_.getSymbol(symbol));
+    }
+    return (symbols);
+  }
+}
@@ -0,0 +1,16 @@
+package gov.nasa.jpf.cv;
+
+/**
+ * A learning algorithm that learns an assumption from a
+ * MinimallyAdequateTeacher
+ */
+public interface AssumptionLearner
+{
+  /**
+   * Gets the assumption generated by the learner
+   *
+   * @return the assumption generated by the learner, or null if
+   *         no assumption can help
+   */
+  public Object getAssumption() throws SETException;
+}
@@ -0,0 +1,185 @@
+package gov.nasa.jpf.cv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Decides if two automata accept the same sequences, and if not finds a
+ * shortest sequence they disagree about.  The automata are complete
+ * except for the error state, which a missing transition (or -1) leads
+ * to and which is the only state that doesn't accept, as in Candidate
+ * and FSM.  Both start in state 0.
+ *
+ * This is Hopcroft and Karp's algorithm: pairs of states are merged in
+ * a union-find structure as they are reached from the pair of initial
+ * states, and a pair whose states are merged already is not followed
+ * again.  That takes near linear time in the number of states and
+ * transitions, rather than time in their product.  The pairs are
+ * followed breadth first, so the first pair found of an accepting and a
+ * rejecting state is reached by a shortest sequence.  The pairs are
+ * kept in int arrays, so that automata with many thousand states can be
+ * compared without making an object per pair.
+ */
+public class AutomatonEquivalence {
+  private AutomatonEquivalence() {
+  }
+
+  /**
+   * Compares two candidates
+   *
+   * @param alphabet the symbols to follow
+   *
+   * @return a shortest sequence they disagree about, or null if there
+   *         is none
+   */
+  public static Vector<String> distinguish(Candidate a, Candidate b, List<String> alphabet) {
+    return (distinguish(toTable(a, alphabet), toTable(b, alphabet), alphabet));
+  }
+
+  /**
+   * Compares a candidate with an FSM
+   *
+   * @param alphabet the symbols to follow
+   *
+   * @return a shortest sequence they disagree about, or null if there
+   *         is none
+   */
+  public static Vector<String> distinguish(Candidate a, FSM b, List<String> alphabet) {
+    return (distinguish(toTable(a, alphabet), toTable(b, alphabet), alphabet));
+  }
+
+  /**
+   * Compares two automata given as tables (see toTable)
+   *
+   * @param alphabet the symbols the columns of the tables stand for
+   *
+   * @return a shortest sequence they disagree about, or null if there
+   *         is none
+   */
+  public static Vector<String> distinguish(int[][] a, int[][] b, List<String> alphabet) {
+    int symbols = alphabet.size();
+
+    // The states of a are 0 to a.length - 1, followed by its error
+    // state, and then those of b, followed by its error state
+    final int errorA = a.length;
+    final int offsetB = a.length + 1;
+    final int errorB = offsetB + b.length;
+    int[] sets = new int[errorB + 1];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = i;
+    }
+
+    // The queue of pairs, with the index of the pair each was reached
+    // from and the symbol it was reached by
+    int capacity = Math.max(16, sets.length);
+    int[] left = new int[capacity];
+    int[] right = new int[capacity];
+    int[] from = new int[capacity];
+    int[] symbol = new int[capacity];
+    left[0] = (a.length == 0) ? errorA : 0;
+    right[0] = (b.length == 0) ? errorB : offsetB;
+    from[0] = -1;
+    int size = 1;
+
+    for (int head = 0; head < size; head++) {
+      int p = left[head];
+      int q = right[head];
+      int setP = find(sets, p);
+      int setQ = find(sets, q);
+      if (setP == setQ) {
+        continue;
+      }
+      if ((p == errorA) != (q == errorB)) {
+        return (trace(from, symbol, head, alphabet));
+      }
+      sets[setP] = setQ;
+
+      if (size + symbols > left.length) {
+        capacity = Math.max(2 * left.length, size + symbols);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        from = Arrays.copyOf(from, capacity);
+        symbol = Arrays.copyOf(symbol, capacity);
+      }
+      for (int s = 0; s < symbols; s++) {
+        int nextP = (p == errorA) ? -1 : a[p][s];
+        int nextQ = (q == errorB) ? -1 : b[q - offsetB][s];
+        nextP = (nextP == -1) ? errorA : nextP;
+        nextQ = (nextQ == -1) ? errorB : offsetB + nextQ;
+        if (find(sets, nextP) != find(sets, nextQ)) {
+          left[size] = nextP;
+          right[size] = nextQ;
+          from[size] = head;
+          symbol[size] = s;
+          size++;
+        }
+      }
+    }
+    return (null);
+  }
+
+  /**
+   * Finds the set of an element, halving the path to it
+   */
+  private static int find(int[] sets, int element) {
+    while (sets[element] != element) {
+      sets[element] = sets[sets[element]];
+      element = sets[element];
+    }
+    return (element);
+  }
+
+  /**
+   * Gets the symbols that lead to a pair of the queue
+   */
+  private static Vector<String> trace(int[] from, int[] symbol, int pair,
+      List<String> alphabet) {
+    Vector<String> trace = new Vector<String>();
+    for (int p = pair; from[p] != -1; p = from[p]) {
+      trace.add(alphabet.get(symbol[p]));
+    }
+    Collections.reverse(trace);
+    return (trace);
+  }
+
+  /**
+   * Gets the transitions of a candidate as a table
+   *
+   * @param alphabet the symbols, one per column
+   *
+   * @return the next state by state and symbol, -1 for the error state
+   */
+  public static int[][] toTable(Candidate candidate, List<String> alphabet) {
+    int[] ids = new int[alphabet.size()];
+    for (int s = 0; s < ids.length; s++) {
+      ids[s] = candidate.getSymbols().getId(alphabet.get(s));
+    }
+
+    int[][] table = new int[candidate.numberOfStates()][alphabet.size()];
+    for (int state = 0; state < table.length; state++) {
+      for (int s = 0; s < ids.length; s++) {
+        table[state][s] = (ids[s] == -1) ? -1 : candidate.getTransition(state, ids[s]);
+      }
+    }
+    return (table);
+  }
+
+  /**
+   * Gets the transitions of an FSM as a table
+   *
+   * @param alphabet the symbols, one per column
+   *
+   * @return the next state by state and symbol, -1 for the error state
+   */
+  public static int[][] toTable(FSM fsm, List<String> alphabet) {
+    int[][] table = new int[fsm.numberOfStates()][alphabet.size()];
+    for (int state = 0; state < table.length; state++) {
+      for (int s = 0; s < alphabet.size(); s++) {
+        table[state][s] = fsm.getTransition(state, alphabet.get(s));
+      }
+    }
+    return (table);
+  }
+}
@@ -0,0 +1,420 @@
+package gov.nasa.jpf.cv;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * Computes digests of the methods of the classes in classpath
+ * directories, to tell which methods changed between two runs.
+ *
+ * A method is named as the ExecutedMethodsListener names it, its class
+ * name, a dot and its name and signature, e.g.
+ * "ICSETutorial.Input.send()V".  A class name by itself stands for the
+ * declaration of the class: its flags, super class, interfaces and
+ * fields.
+ *
+ * The digest of a method covers its flags, its code and its exception
+ * handlers.  Constant pool references in the code are replaced by the
+ * constants they refer to, so that a change to another method of the
+ * class, which moves constants around, doesn't change the digest.
+ * Classes in jars are libraries, and are not tracked.
+ */
+public class BytecodeDigests {
+  /**
+   * The length of each instruction, or 0 if it varies
+   */
+  private static final int[] LENGTHS = new int[256];
+
+  static {
+    for (int op = 0; op < LENGTHS.length; op++) {
+      LENGTHS[op] = 1;
+    }
+    LENGTHS[16] = 2; // bipush
+    LENGTHS[17] = 3; // sipush
+    LENGTHS[18] = 2; // ldc
+    LENGTHS[19] = 3; // ldc_w
+    LENGTHS[20] = 3; // ldc2_w
+    for (int op = 21; op <= 25; op++) {
+      LENGTHS[op] = 2; // loads
+    }
+    for (int op = 54; op <= 58; op++) {
+      LENGTHS[op] = 2; // stores
+    }
+    LENGTHS[132] = 3; // iinc
+    for (int op = 153; op <= 168; op++) {
+      LENGTHS[op] = 3; // branches
+    }
+    LENGTHS[169] = 2; // ret
+    LENGTHS[170] = 0; // tableswitch
+    LENGTHS[171] = 0; // lookupswitch
+    for (int op = 178; op <= 184; op++) {
+      LENGTHS[op] = 3; // fields and invokes
+    }
+    LENGTHS[185] = 5; // invokeinterface
+    LENGTHS[186] = 5; // invokedynamic
+    LENGTHS[187] = 3; // new
+    LENGTHS[188] = 2; // newarray
+    LENGTHS[189] = 3; // anewarray
+    LENGTHS[192] = 3; // checkcast
+    LENGTHS[193] = 3; // instanceof
+    LENGTHS[196] = 0; // wide
+    LENGTHS[197] = 4; // multianewarray
+    LENGTHS[198] = 3; // ifnull
+    LENGTHS[199] = 3; // ifnonnull
+    LENGTHS[200] = 5; // goto_w
+    LENGTHS[201] = 5; // jsr_w
+  }
+
+  private final File[] directories_;
+
+  /**
+   * The digests of each class read so far, by class name.  A class
+   * that is not in a directory maps to null.
+   */
+  private final HashMap<String, HashMap<String, Long>> classes_ =
+      new HashMap<String, HashMap<String, Long>>();
+
+  /**
+   * Creates the digests for the directories of a classpath.  Jars on
+   * the classpath are left out.
+   *
+   * @param classpath the classpath entries, or null
+   */
+  public BytecodeDigests(String[] classpath) {
+    int count = 0;
+    File[] directories = new File[(classpath == null) ? 0 : classpath.length];
+    for (int i = 0; i < directories.length; i++) {
+      File entry = new File(classpath[i]);
+      if (entry.isDirectory()) {
+        directories[count++] = entry;
+      }
+    }
+
+    directories_ = new File[count];
+    System.arraycopy(directories, 0, directories_, 0, count);
+  }
+
+  /**
+   * Gets the name of the class of a method
+   *
+   * @param name a method or class name
+   *
+   * @return the class name
+   */
+  public static String getClassName(String name) {
+    int open = name.indexOf('(');
+    if (open < 0) {
+      return (name);
+    }
+    return (name.substring(0, name.lastIndexOf('.', open)));
+  }
+
+  /**
+   * Determines if a class is tracked, i.e. if it is in a classpath
+   * directory
+   *
+   * @param className the class name
+   */
+  public synchronized boolean isTracked(String className) {
+    return (this.getClassDigests(className) != null);
+  }
+
+  /**
+   * Gets the current digest of a method or class
+   *
+   * @param name a method or class name
+   *
+   * @return the digest, or null if the method or class is not in a
+   *         classpath directory
+   */
+  public synchronized Long getDigest(String name) {
+    String className = getClassName(name);
+    HashMap<String, Long> digests = this.getClassDigests(className);
+    if (digests == null) {
+      return (null);
+    }
+    return (digests.get((className.length() == name.length()) ? ""
+        : name.substring(className.length() + 1)));
+  }
+
+  private HashMap<String, Long> getClassDigests(String className) {
+    if (classes_.containsKey(className)) {
+      return (classes_.get(className));
+    }
+
+    HashMap<String, Long> digests = null;
+    String path = className.replace('.', File.separatorChar) + ".class";
+    for (int i = 0; i < directories_.length; i++) {
+      File file = new File(directories_[i], path);
+      if (file.isFile()) {
+        try {
+          digests = digestClass(file);
+        } catch (IOException x) {
+          // a class we cannot read has no digest, so it counts as changed
+          digests = new HashMap<String, Long>();
+        }
+        break;
+      }
+    }
+
+    classes_.put(className, digests);
+    return (digests);
+  }
+
+  /**
+   * Reads a class file, and digests its declaration and its methods
+   *
+   * @param file the class file
+   *
+   * @return the digests by method name and signature, and the
+   *         declaration under ""
+   */
+  static HashMap<String, Long> digestClass(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != 0xCAFEBABE) {
+        throw (new IOException(file + " is not a class file"));
+      }
+      in.readUnsignedShort(); // minor
+      in.readUnsignedShort(); // major
+
+      String[] constants = readConstantPool(in);
+      HashMap<String, Long> digests = new HashMap<String, Long>();
+
+      MessageDigest declaration = newDigest();
+      update(declaration, String.valueOf(in.readUnsignedShort()));
+      update(declaration, constants[in.readUnsignedShort()]);
+      update(declaration, constants[in.readUnsignedShort()]);
+      int interfaces = in.readUnsignedShort();
+      for (int i = 0; i < interfaces; i++) {
+        update(declaration, constants[in.readUnsignedShort()]);
+      }
+
+      int fields = in.readUnsignedShort();
+      for (int i = 0; i < fields; i++) {
+        update(declaration, in.readUnsignedShort() + " "
+            + constants[in.readUnsignedShort()] + " "
+            + constants[in.readUnsignedShort()]);
+        skipAttributes(in);
+      }
+      digests.put("", toLong(declaration.digest()));
+
+      int methods = in.readUnsignedShort();
+      for (int i = 0; i < methods; i++) {
+        MessageDigest method = newDigest();
+        update(method, String.valueOf(in.readUnsignedShort()));
+        String name = constants[in.readUnsignedShort()]
+            + constants[in.readUnsignedShort()];
+
+        int attributes = in.readUnsignedShort();
+        for (int j = 0; j < attributes; j++) {
+          String attribute = constants[in.readUnsignedShort()];
+          byte[] value = new byte[in.readInt()];
+          in.readFully(value);
+          if (attribute.equals("Code")) {
+            digestCode(method, value, constants);
+          }
+        }
+        digests.put(name, toLong(method.digest()));
+      }
+
+      return (digests);
+    } catch (ArrayIndexOutOfBoundsException x) {
+      throw (new IOException(file + " has a bad constant pool index"));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads the constant pool, and renders each constant as text.
+   * References to other constants are resolved.
+   */
+  private static String[] readConstantPool(DataInputStream in) throws IOException {
+    int count = in.readUnsignedShort();
+    int[] tags = new int[count];
+    int[] first = new int[count];
+    int[] second = new int[count];
+    String[] constants = new String[count];
+
+    for (int i = 1; i < count; i++) {
+      tags[i] = in.readUnsignedByte();
+      switch (tags[i]) {
+      case 1: // Utf8
+        constants[i] = in.readUTF();
+        break;
+      case 3: // Integer
+        constants[i] = "I" + in.readInt();
+        break;
+      case 4: // Float
+        constants[i] = "F" + in.readInt();
+        break;
+      case 5: // Long
+        constants[i] = "J" + in.readLong();
+        i++;
+        break;
+      case 6: // Double
+        constants[i] = "D" + in.readLong();
+        i++;
+        break;
+      case 7: // Class
+      case 8: // String
+      case 16: // MethodType
+      case 19: // Module
+      case 20: // Package
+        first[i] = in.readUnsignedShort();
+        break;
+      case 15: // MethodHandle
+        first[i] = in.readUnsignedByte();
+        second[i] = in.readUnsignedShort();
+        break;
+      case 9: // Fieldref
+      case 10: // Methodref
+      case 11: // InterfaceMethodref
+      case 12: // NameAndType
+      case 17: // Dynamic
+      case 18: // InvokeDynamic
+        first[i] = in.readUnsignedShort();
+        second[i] = in.readUnsignedShort();
+        break;
+      default:
+        throw (new IOException("unknown constant pool tag " + tags[i]));
+      }
+    }
+
+    for (int i = 1; i < count; i++) {
+      resolve(i, tags, first, second, constants);
+    }
+    return (constants);
+  }
+
+  private static String resolve(int i, int[] tags, int[] first, int[] second,
+      String[] constants) {
+    if (constants[i] == null) {
+      switch (tags[i]) {
+      case 0:
+        // index 0, and the second slot of a long or double
+        constants[i] = "";
+        break;
+      case 7:
+      case 8:
+      case 16:
+      case 19:
+      case 20:
+        constants[i] = tags[i] + ":" + resolve(first[i], tags, first, second, constants);
+        break;
+      case 15:
+        constants[i] = tags[i] + ":" + first[i] + ":"
+            + resolve(second[i], tags, first, second, constants);
+        break;
+      case 17:
+      case 18:
+        // the bootstrap method is an index into an attribute
+        constants[i] = tags[i] + ":" + first[i] + ":"
+            + resolve(second[i], tags, first, second, constants);
+        break;
+      default:
+        constants[i] = tags[i] + ":"
+            + resolve(first[i], tags, first, second, constants) + ":"
+            + resolve(second[i], tags, first, second, constants);
+        break;
+      }
+    }
+    return (constants[i]);
+  }
+
+  /**
+   * Digests a Code attribute: its limits, its instructions with the
+   * constants they refer to, and its exception handlers.  Other
+   * attributes, like line numbers, are left out.
+   */
+  private static void digestCode(MessageDigest digest, byte[] value,
+      String[] constants) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+    update(digest, in.readUnsignedShort() + " " + in.readUnsignedShort());
+
+    byte[] code = new byte[in.readInt()];
+    in.readFully(code);
+    int pc = 0;
+    while (pc < code.length) {
+      int op = code[pc] & 0xff;
+      int length = LENGTHS[op];
+
+      if (op == 170) {
+        int at = (pc + 4) & ~3;
+        int low = getInt(code, at + 4);
+        int high = getInt(code, at + 8);
+        length = at + 12 + 4 * (high - low + 1) - pc;
+      } else if (op == 171) {
+        int at = (pc + 4) & ~3;
+        length = at + 8 + 8 * getInt(code, at + 4) - pc;
+      } else if (op == 196) {
+        length = ((code[pc + 1] & 0xff) == 132) ? 6 : 4;
+      }
+
+      if ((op == 18) || (op == 19) || (op == 20) || ((op >= 178) && (op <= 187))
+          || (op == 189) || (op == 192) || (op == 193) || (op == 197)) {
+        int index = (op == 18) ? (code[pc + 1] & 0xff)
+            : (((code[pc + 1] & 0xff) << 8) | (code[pc + 2] & 0xff));
+        digest.update((byte) op);
+        update(digest, constants[index]);
+        int operands = (op == 18) ? 2 : 3;
+        digest.update(code, pc + operands, length - operands);
+      } else {
+        digest.update(code, pc, length);
+      }
+      pc += length;
+    }
+
+    int handlers = in.readUnsignedShort();
+    for (int i = 0; i < handlers; i++) {
+      int start = in.readUnsignedShort();
+      int end = in.readUnsignedShort();
+      int handler = in.readUnsignedShort();
+      int type = in.readUnsignedShort();
+      update(digest, start + " " + end + " " + handler + " "
+          + ((type == 0) ? "*" : constants[type]));
+    }
+  }
+
+  private static void skipAttributes(DataInputStream in) throws IOException {
+    int attributes = in.readUnsignedShort();
+    for (int i = 0; i < attributes; i++) {
+      in.readUnsignedShort();
+      in.skipBytes(in.readInt());
+    }
+  }
+
+  private static int getInt(byte[] code, int at) {
+    return (((code[at] & 0xff) << 24) | ((code[at + 1] & 0xff) << 16)
+        | ((code[at + 2] & 0xff) << 8) | (code[at + 3] & 0xff));
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return (MessageDigest.getInstance("SHA-1"));
+    } catch (NoSuchAlgorithmException x) {
+      throw (new IllegalStateException("SHA-1 is not available"));
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) throws IOException {
+    digest.update(s.getBytes("UTF-8"));
+    digest.update((byte) 0);
+  }
+
+  private static Long toLong(byte[] digest) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (digest[i] & 0xff);
+    }
+    return (new Long(value));
+  }
+}
@@ -1,13 +1,16 @@
 package gov.nasa.jpf.cv;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.TreeMap;
 import java.util.Vector;
 
 /**
  * A candidate assumption.  Contains a mapping between states in the
  * assumption, and the column in S the state corresponds to.
+ *
+ * The transitions are kept in a table indexed by state and by the ID
+ * the symbol has in the candidate's SymbolTable.  The methods that take
+ * the symbol as a String look up its ID first.
  */
 public class Candidate
 {
@@ -17,37 +20,54 @@ public class Candidate
   private TreeMap candidateStateToS_;
 
   /**
-   * The transitions for this state
+   * The alphabet of the candidate
    */
-  private HashMap[] transitions_;
+  private SymbolTable symbols_;
+
+  /**
+   * The ending state by starting state and symbol ID, -1 if no
+   * transition has been set
+   */
+  private int[][] transitions_;
 
   /**
    * Creates a new candidate
    *
    * @param states the number of states
    * @param map the mapping
+   * @param symbols the alphabet
    */
-  public Candidate(int states, TreeMap map)
+  public Candidate(int states, TreeMap map, SymbolTable symbols)
   {
     candidateStateToS_ = map;
+    symbols_ = symbols;
 
-    transitions_ = new HashMap[states];
+    transitions_ = new int[states][symbols.size()];
     for(int i = 0; i < states; i++)
       {
-	transitions_[i] = new HashMap();
+	Arrays.fill(transitions_[i], -1);
       }
   }
 
   /**
-   * Gets the candidate assumption
+   * Gets the transitions of the candidate, which must not be changed
    * 
-   * @return the candidate assumption
+   * @return the ending state by starting state and symbol ID
    */
-  public Map[] getTransitions()
+  public int[][] getTransitions()
   {
     return(transitions_);
   }
 
+  /**
+   * Gets the alphabet
+   *
+   * @return the symbol table the symbol IDs refer to
+   */
+  public SymbolTable getSymbols()
+  {
+    return(symbols_);
+  }
 
   /**
    * Gets the number of states
@@ -74,36 +94,67 @@ public class Candidate
    * Sets a transition in the candidate
    *
    * @param state the starting state
-   * @param action the action that is performed
+   * @param symbol the ID of the action that is performed
+   * @param end the ending state
+   */
+  public void setTransition(int start, int symbol, int end)
+  {
+    transitions_[start][symbol] = end;
+  }
+
+  /**
+   * Sets a transition in the candidate
+   *
+   * @param state the starting state
+   * @param action the action that is performed, which must be in the
+   * alphabet
    * @param end the ending state
    */
   public void setTransition(int start, String action, int end)
   {
-    HashMap startTransitions = transitions_[start];
-    startTransitions.put(action, new Integer(end));
+    int symbol = symbols_.getId(action);
+    if(symbol < 0)
+      {
+	throw(new IllegalArgumentException("action " + action
+					   + " is not in the alphabet"));
+      }
+
+    transitions_[start][symbol] = end;
   }
 
   /**
    * Gets a transition in the candidate
    *
    * @param state the starting state
-   * @param action the action that is performed
+   * @param symbol the ID of the action that is performed
    *
    * @return the ending state, or -1 if no transition has been set
    */
+  public int getTransition(int start, int symbol)
+  {
+    return(transitions_[start][symbol]);
+  }
+
+  /**
+   * Gets a transition in the candidate
+   *
+   * @param state the starting state
+   * @param action the action that is performed
+   *
+   * @return the ending state, or -1 if no transition has been set or
+   * the action is not in the alphabet
+   */
   public int getTransition(int start, String action)
   {
-    HashMap startTransitions = transitions_[start];
-    Integer end = (Integer)startTransitions.get(action);
+    int symbol = symbols_.getId(action);
 
-    if(end == null)
+    if(symbol < 0)
       {
 	return(-1);
       }
     else
       {
-	return(end.intValue());
+	return(transitions_[start][symbol]);
       }
   }
 } // end class Candidate
-
@@ -0,0 +1,303 @@
+package gov.nasa.jpf.cv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * The minimal candidate for the language of a candidate, with its
+ * states numbered in a canonical order, and a hash of its structure.
+ * Candidates that accept the same sequences over the same alphabet
+ * have equal canonical forms, so a canonical candidate can be used as
+ * a key, e.g. for the verdicts of the oracles.
+ *
+ * The states that cannot be reached from state 0 are dropped, and the
+ * others are merged by Hopcroft's partition refinement, in which a
+ * missing transition leads to the error state.  The states are then
+ * numbered in the order a breadth first search from state 0 reaches
+ * them, following the symbols in the order of the alphabet.  Each
+ * state's S is the sequence that search reaches it by.
+ *
+ * The hash is a 64 bit FNV-1a hash of the alphabet and the transitions,
+ * so it doesn't change from one run to another.
+ */
+public class CanonicalCandidate {
+  private final Candidate candidate_;
+
+  private final List<String> alphabet_;
+
+  /**
+   * The transitions by state and symbol, -1 for the error state
+   */
+  private final int[][] table_;
+
+  private final long hash_;
+
+  private CanonicalCandidate(Candidate candidate, List<String> alphabet, int[][] table) {
+    candidate_ = candidate;
+    alphabet_ = alphabet;
+    table_ = table;
+    hash_ = hash(alphabet, table);
+  }
+
+  /**
+   * Minimizes a candidate
+   *
+   * @param candidate the candidate
+   * @param alphabet the alphabet of the candidate
+   *
+   * @return the canonical form of the candidate
+   */
+  public static CanonicalCandidate minimize(Candidate candidate, List<String> alphabet) {
+    int symbols = alphabet.size();
+    int[][] table = AutomatonEquivalence.toTable(candidate, alphabet);
+
+    // Number the reachable states 0 to n - 1, and the error state n
+    int[] reached = new int[table.length];
+    Arrays.fill(reached, -1);
+    int[] order = new int[table.length];
+    int n = 0;
+    if (table.length > 0) {
+      reached[0] = n;
+      order[n++] = 0;
+    }
+    for (int next = 0; next < n; next++) {
+      for (int s = 0; s < symbols; s++) {
+        int end = table[order[next]][s];
+        if ((end != -1) && (reached[end] == -1)) {
+          reached[end] = n;
+          order[n++] = end;
+        }
+      }
+    }
+    int error = n;
+    int[][] delta = new int[n + 1][symbols];
+    for (int state = 0; state < n; state++) {
+      for (int s = 0; s < symbols; s++) {
+        int end = table[order[state]][s];
+        delta[state][s] = (end == -1) ? error : reached[end];
+      }
+    }
+    Arrays.fill(delta[error], error);
+
+    int[] blocks = refine(delta, symbols, error);
+
+    // Number the blocks breadth first from the initial state's
+    int[] number = new int[n + 1];
+    Arrays.fill(number, -1);
+    int[] representative = new int[n + 1];
+    Vector<Vector<String>> access = new Vector<Vector<String>>();
+    int states = 0;
+    if (n > 0) {
+      number[blocks[0]] = states;
+      representative[states++] = 0;
+      access.add(new Vector<String>());
+    }
+    for (int next = 0; next < states; next++) {
+      for (int s = 0; s < symbols; s++) {
+        int end = delta[representative[next]][s];
+        if ((end != error) && (number[blocks[end]] == -1)) {
+          number[blocks[end]] = states;
+          representative[states++] = end;
+          Vector<String> sequence = new Vector<String>(access.get(next));
+          sequence.add(alphabet.get(s));
+          access.add(sequence);
+        }
+      }
+    }
+
+    int[][] minimal = new int[states][symbols];
+    TreeMap<Integer, Vector<String>> map = new TreeMap<Integer, Vector<String>>();
+    for (int state = 0; state < states; state++) {
+      map.put(new Integer(state), access.get(state));
+    }
+    Candidate canonical = new Candidate(states, map, new SymbolTable(alphabet.iterator()));
+    for (int state = 0; state < states; state++) {
+      for (int s = 0; s < symbols; s++) {
+        int end = delta[representative[state]][s];
+        minimal[state][s] = (end == error) ? -1 : number[blocks[end]];
+        if (end != error) {
+          canonical.setTransition(state, alphabet.get(s), minimal[state][s]);
+        }
+      }
+    }
+    return (new CanonicalCandidate(canonical, new Vector<String>(alphabet), minimal));
+  }
+
+  /**
+   * Partitions the states of a complete automaton into blocks of
+   * equivalent states, by Hopcroft's algorithm
+   *
+   * @param delta the transitions
+   * @param symbols the size of the alphabet
+   * @param error the only state that doesn't accept
+   *
+   * @return the block of each state
+   */
+  private static int[] refine(int[][] delta, int symbols, int error) {
+    int n = delta.length;
+
+    // The states that move to each state by each symbol, as
+    // predecessors[s][first[s][t]] up to predecessors[s][first[s][t + 1]]
+    int[][] first = new int[symbols][n + 1];
+    int[][] predecessors = new int[symbols][n];
+    for (int s = 0; s < symbols; s++) {
+      for (int state = 0; state < n; state++) {
+        first[s][delta[state][s] + 1]++;
+      }
+      for (int state = 0; state < n; state++) {
+        first[s][state + 1] += first[s][state];
+      }
+      int[] filled = first[s].clone();
+      for (int state = 0; state < n; state++) {
+        predecessors[s][filled[delta[state][s]]++] = state;
+      }
+    }
+
+    // The states of each block are elements[start[b]] up to
+    // elements[end[b]], the marked ones first while splitting
+    int[] elements = new int[n];
+    int[] position = new int[n];
+    int[] block = new int[n];
+    int[] start = new int[n];
+    int[] end = new int[n];
+    int[] marked = new int[n];
+    int blocks = 0;
+    int accepting = 0;
+    for (int state = 0; state < n; state++) {
+      if (state != error) {
+        elements[accepting] = state;
+        position[state] = accepting++;
+      }
+    }
+    elements[accepting] = error;
+    position[error] = accepting;
+    if (accepting > 0) {
+      start[blocks] = 0;
+      end[blocks++] = accepting;
+    }
+    start[blocks] = accepting;
+    end[blocks++] = n;
+    for (int state = 0; state < n; state++) {
+      block[state] = (state == error) ? blocks - 1 : 0;
+    }
+
+    // The blocks to split the others by.  The error block is the
+    // smaller one, and splitting by one of two blocks is enough.
+    int[] pending = new int[n];
+    boolean[] isPending = new boolean[n];
+    int pendingCount = 0;
+    pending[pendingCount++] = blocks - 1;
+    isPending[blocks - 1] = true;
+
+    int[] splitter = new int[n];
+    int[] touched = new int[n];
+    while (pendingCount > 0) {
+      int b = pending[--pendingCount];
+      isPending[b] = false;
+      int size = end[b] - start[b];
+      System.arraycopy(elements, start[b], splitter, 0, size);
+
+      for (int s = 0; s < symbols; s++) {
+        int touchedCount = 0;
+        for (int i = 0; i < size; i++) {
+          int target = splitter[i];
+          for (int j = first[s][target]; j < first[s][target + 1]; j++) {
+            int state = predecessors[s][j];
+            int c = block[state];
+            if (position[state] < start[c] + marked[c]) {
+              continue;
+            }
+            if (marked[c] == 0) {
+              touched[touchedCount++] = c;
+            }
+
+            // Swap the state to the end of the marked ones
+            int swap = elements[start[c] + marked[c]];
+            elements[position[state]] = swap;
+            position[swap] = position[state];
+            elements[start[c] + marked[c]] = state;
+            position[state] = start[c] + marked[c];
+            marked[c]++;
+          }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+          int c = touched[i];
+          if (marked[c] < end[c] - start[c]) {
+            // The marked states become a new block
+            int split = blocks++;
+            start[split] = start[c];
+            end[split] = start[c] + marked[c];
+            start[c] = end[split];
+            for (int p = start[split]; p < end[split]; p++) {
+              block[elements[p]] = split;
+            }
+
+            int add = split;
+            if (!isPending[c] && (end[c] - start[c] < end[split] - start[split])) {
+              add = c;
+            }
+            pending[pendingCount++] = add;
+            isPending[add] = true;
+          }
+          marked[c] = 0;
+        }
+      }
+    }
+    return (block);
+  }
+
+  private static long hash(List<String> alphabet, int[][] table) {
+    long hash = 0xcbf29ce484222325L;
+    for (String symbol : alphabet) {
+      for (int i = 0; i < symbol.length(); i++) {
+        hash = (hash ^ symbol.charAt(i)) * 0x100000001b3L;
+      }
+      hash = (hash ^ 0xffff) * 0x100000001b3L;
+    }
+    hash = (hash ^ table.length) * 0x100000001b3L;
+    for (int state = 0; state < table.length; state++) {
+      for (int s = 0; s < table[state].length; s++) {
+        hash = (hash ^ table[state][s]) * 0x100000001b3L;
+      }
+    }
+    return (hash);
+  }
+
+  /**
+   * Gets the minimal candidate
+   */
+  public Candidate getCandidate() {
+    return (candidate_);
+  }
+
+  public int numberOfStates() {
+    return (table_.length);
+  }
+
+  /**
+   * Gets the structural hash
+   */
+  public long getHash() {
+    return (hash_);
+  }
+
+  public int hashCode() {
+    return ((int) (hash_ ^ (hash_ >>> 32)));
+  }
+
+  public boolean equals(Object object) {
+    if (!(object instanceof CanonicalCandidate)) {
+      return (false);
+    }
+    CanonicalCandidate other = (CanonicalCandidate) object;
+    return ((hash_ == other.hash_) && alphabet_.equals(other.alphabet_)
+        && Arrays.deepEquals(table_, other.table_));
+  }
+
+  public String toString() {
+    return ("candidate " + Long.toHexString(hash_) + " with " + table_.length + " states");
+  }
+}
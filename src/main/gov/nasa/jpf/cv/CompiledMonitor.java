@@ -0,0 +1,230 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * The transitions of a safety automaton, compiled for the listeners
+ * that advance it on every method JPF invokes or event it dispatches.
+ * The symbols are found with a perfect hash, which takes one probe and
+ * the String's cached hash code, and the transitions are a dense table
+ * of states by symbols in which -1 is the error state.  Looking up a
+ * symbol and following a transition allocate nothing.
+ *
+ * Symbols with the same hash code share a slot whatever the seed, so
+ * all but the first of them, and any symbols that still collide once
+ * the table is MAX_SLOTS big, are kept in an ordinary map that is only
+ * looked at when the probe misses.
+ */
+public class CompiledMonitor {
+  /**
+   * The symbols, by ID
+   */
+  private final String[] symbols_;
+
+  /**
+   * The hash table of the symbols: keys_[slot(s)] is s or null, and
+   * ids_[slot(s)] its ID
+   */
+  private final String[] keys_;
+
+  private final int[] ids_;
+
+  private final int seed_;
+
+  private final int mask_;
+
+  /**
+   * The symbols that didn't get a slot, by ID, or null if there are none
+   */
+  private final HashMap<String, Integer> overflow_;
+
+  /**
+   * The most slots the hash table grows to looking for a seed
+   */
+  private static final int MAX_SLOTS = 1 << 16;
+
+  /**
+   * The next state by state and symbol ID, -1 for the error state
+   */
+  private final int[][] table_;
+
+  private CompiledMonitor(String[] symbols, int[][] table) {
+    symbols_ = symbols;
+    table_ = table;
+
+    // Only the first of the symbols with the same hash code can have
+    // a slot of its own
+    HashMap<String, Integer> overflow = new HashMap<String, Integer>();
+    HashSet<Integer> hashes = new HashSet<Integer>();
+    boolean[] hashed = new boolean[symbols.length];
+    for (int id = 0; id < symbols.length; id++) {
+      hashed[id] = hashes.add(Integer.valueOf(symbols[id].hashCode()));
+      if (!hashed[id]) {
+        overflow.put(symbols[id], Integer.valueOf(id));
+      }
+    }
+
+    // Look for a seed that puts every other symbol in a slot of its
+    // own, in a table with at least twice as many slots as symbols.  If
+    // there is none by MAX_SLOTS, the ones that collide overflow.
+    int size = 2;
+    while (size < 2 * symbols.length) {
+      size <<= 1;
+    }
+    String[] keys = null;
+    int[] ids = null;
+    int seed = 0;
+    for (boolean found = false; !found;) {
+      for (int attempt = 0; (attempt < 64) && !found; attempt++) {
+        boolean settle = (size >= MAX_SLOTS) && (attempt == 63);
+        seed = 0x9e3779b9 * (attempt + 1);
+        keys = new String[size];
+        ids = new int[size];
+        found = true;
+        for (int id = 0; (id < symbols.length) && found; id++) {
+          if (!hashed[id]) {
+            continue;
+          }
+          int slot = slot(symbols[id], seed, size - 1);
+          if (keys[slot] == null) {
+            keys[slot] = symbols[id];
+            ids[slot] = id;
+          } else if (settle) {
+            overflow.put(symbols[id], Integer.valueOf(id));
+          } else {
+            found = false;
+          }
+        }
+      }
+      if (!found) {
+        size <<= 1;
+      }
+    }
+    keys_ = keys;
+    ids_ = ids;
+    seed_ = seed;
+    mask_ = size - 1;
+    overflow_ = overflow.isEmpty() ? null : overflow;
+  }
+
+  private static int slot(String symbol, int seed, int mask) {
+    int h = (symbol.hashCode() ^ seed) * 0x85ebca6b;
+    return ((h ^ (h >>> 15)) & mask);
+  }
+
+  /**
+   * Compiles a candidate
+   */
+  public static CompiledMonitor compile(Candidate candidate, Collection<String> alphabet) {
+    String[] symbols = distinct(alphabet);
+    int[][] table = new int[candidate.numberOfStates()][symbols.length];
+    for (int state = 0; state < table.length; state++) {
+      for (int id = 0; id < symbols.length; id++) {
+        table[state][id] = candidate.getTransition(state, symbols[id]);
+      }
+    }
+    return (new CompiledMonitor(symbols, table));
+  }
+
+  /**
+   * Compiles an FSM
+   */
+  public static CompiledMonitor compile(FSM fsm, Collection<String> alphabet) {
+    String[] symbols = distinct(alphabet);
+    int[][] table = new int[fsm.numberOfStates()][symbols.length];
+    for (int state = 0; state < table.length; state++) {
+      for (int id = 0; id < symbols.length; id++) {
+        table[state][id] = fsm.getTransition(state, symbols[id]);
+      }
+    }
+    return (new CompiledMonitor(symbols, table));
+  }
+
+  /**
+   * Compiles the automaton of a query, which accepts the prefixes of a
+   * sequence: state i moves to state i + 1 by the i-th symbol of the
+   * sequence, and on any other symbol to the error state
+   */
+  public static CompiledMonitor compile(AbstractList<String> sequence,
+      Collection<String> alphabet) {
+    String[] symbols = distinct(alphabet);
+    int[][] table = new int[sequence.size() + 1][symbols.length];
+    for (int state = 0; state < table.length; state++) {
+      Arrays.fill(table[state], -1);
+    }
+    CompiledMonitor monitor = new CompiledMonitor(symbols, table);
+    for (int state = 0; state < sequence.size(); state++) {
+      int id = monitor.symbolOf(sequence.get(state));
+      if (id != -1) {
+        table[state][id] = state + 1;
+      }
+    }
+    return (monitor);
+  }
+
+  private static String[] distinct(Collection<String> alphabet) {
+    return (new LinkedHashSet<String>(alphabet).toArray(new String[0]));
+  }
+
+  /**
+   * Gets the ID of a symbol
+   *
+   * @return the ID, or -1 if the symbol is not in the alphabet
+   */
+  public int symbolOf(String symbol) {
+    int slot = slot(symbol, seed_, mask_);
+    String key = keys_[slot];
+    if ((key == symbol) || ((key != null) && key.equals(symbol))) {
+      return (ids_[slot]);
+    }
+    if (overflow_ != null) {
+      Integer id = overflow_.get(symbol);
+      return ((id == null) ? -1 : id.intValue());
+    }
+    return (-1);
+  }
+
+  /**
+   * Gets the next state
+   *
+   * @param state a state, not the error state
+   * @param symbol the ID of a symbol
+   *
+   * @return the next state, -1 for the error state
+   */
+  public int next(int state, int symbol) {
+    return (table_[state][symbol]);
+  }
+
+  public int numberOfStates() {
+    return (table_.length);
+  }
+
+  public int numberOfSymbols() {
+    return (symbols_.length);
+  }
+
+  /**
+   * Lists the transitions of each state, e.g. [0: {a=1, b=0}]; [1: {}]
+   */
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for (int state = 0; state < table_.length; state++) {
+      result.append((state == 0) ? "[" : "; [").append(state).append(": {");
+      String separator = "";
+      for (int id = 0; id < symbols_.length; id++) {
+        if (table_[state][id] != -1) {
+          result.append(separator).append(symbols_[id]).append('=').append(table_[state][id]);
+          separator = ", ";
+        }
+      }
+      result.append("}]");
+    }
+    return (result.toString());
+  }
+}
@@ -0,0 +1,217 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * Tests a candidate against the answers to membership queries before
+ * the teacher runs the oracles, which are the most expensive calls of
+ * a learning run.  Early candidates are usually wrong in shallow ways,
+ * which a few short tests find.
+ *
+ * The tests are the W-method's P.X^k.W for k up to a depth (see
+ * WEnumeration): P are the access sequences of the states of the
+ * candidate, and W tells its states apart.  A test the candidate and
+ * the teacher disagree about is a counterexample.  With memo, only the
+ * tests the teacher has answered already (see AbstractTeacher.lookup)
+ * are used.  With batch, up to a number of the others are also asked
+ * as a batch of queries, one batch per k.
+ */
+public class ConformanceTester {
+  private final boolean runQueries_;
+
+  private final int depth_;
+
+  private final int maxQueries_;
+
+  /**
+   * The number of candidates tested
+   */
+  private long candidates_ = 0;
+
+  /**
+   * The number of tests the teacher knew the answer to
+   */
+  private long recalled_ = 0;
+
+  /**
+   * The number of tests asked as queries
+   */
+  private long queries_ = 0;
+
+  /**
+   * The number of counterexamples found
+   */
+  private long found_ = 0;
+
+  /**
+   * Creates a tester by name
+   *
+   * @param name memo or batch
+   * @param depth the largest k in P.X^k.W
+   * @param maxQueries the most queries to ask per candidate with batch
+   *
+   * @return the tester, or null if the name is unknown
+   */
+  public static ConformanceTester create(String name, int depth, int maxQueries) {
+    if (name.equals("memo")) {
+      return (new ConformanceTester(false, depth, 0));
+    } else if (name.equals("batch")) {
+      return (new ConformanceTester(true, depth, maxQueries));
+    } else {
+      return (null);
+    }
+  }
+
+  public ConformanceTester(boolean runQueries, int depth, int maxQueries) {
+    runQueries_ = runQueries;
+    depth_ = depth;
+    maxQueries_ = maxQueries;
+  }
+
+  /**
+   * Tests a candidate
+   *
+   * @param teacher the teacher
+   * @param candidate the candidate
+   *
+   * @return a counterexample, or null if the tests found none
+   */
+  public Vector<String> test(AbstractTeacher teacher, Candidate candidate)
+      throws SETException {
+    candidates_++;
+
+    SymbolTable symbols = new SymbolTable(teacher.getAlphabet());
+    Vector<String> alphabet = new Vector<String>(symbols.size());
+    for (int i = 0; i < symbols.size(); i++) {
+      alphabet.add(symbols.getSymbol(i));
+    }
+
+    Vector<Vector<String>> P = new Vector<Vector<String>>();
+    for (int state = 0; state < candidate.numberOfStates(); state++) {
+      P.add(new Vector<String>(candidate.getS(state)));
+    }
+    Vector<Vector<String>> W = getCharacterizingSet(candidate, alphabet);
+
+    HashSet<Vector<String>> tested = new HashSet<Vector<String>>();
+    int queriesLeft = maxQueries_;
+    for (int k = 0; k <= depth_; k++) {
+      Vector<AbstractList<String>> unknown = new Vector<AbstractList<String>>();
+      for (WEnumeration tests = new WEnumeration(P, W, alphabet, k); tests.hasMoreElements();) {
+        Vector<String> test = (Vector<String>) tests.nextElement();
+        if (!tested.add(test)) {
+          continue;
+        }
+
+        Boolean violating = teacher.lookup(test);
+        if (violating != null) {
+          recalled_++;
+          if (accepts(candidate, test) == violating.booleanValue()) {
+            found_++;
+            return (test);
+          }
+        } else if (runQueries_ && (unknown.size() < queriesLeft)) {
+          unknown.add(test);
+        }
+      }
+
+      if (!unknown.isEmpty()) {
+        queriesLeft -= unknown.size();
+        queries_ += unknown.size();
+        boolean[] answers = teacher.queryBatch(unknown);
+
+        // Of the disagreements, return the shortest
+        Vector<String> shortest = null;
+        for (int i = 0; i < answers.length; i++) {
+          Vector<String> test = (Vector<String>) unknown.get(i);
+          if ((accepts(candidate, test) != answers[i])
+              && ((shortest == null) || (test.size() < shortest.size()))) {
+            shortest = test;
+          }
+        }
+        if (shortest != null) {
+          found_++;
+          return (shortest);
+        }
+      }
+    }
+    return (null);
+  }
+
+  /**
+   * Finds sequences that tell the states of a candidate apart.  Starting
+   * from lambda, a symbol followed by one of the sequences found so far
+   * is kept if it splits states that none of them does.  The learners
+   * build minimal candidates, so this normally ends with every state
+   * told apart.
+   */
+  private static Vector<Vector<String>> getCharacterizingSet(Candidate candidate,
+      Vector<String> alphabet) {
+    int states = candidate.numberOfStates();
+
+    // What the sequences found so far say about each state
+    String[] signatures = new String[states];
+    for (int state = 0; state < states; state++) {
+      signatures[state] = accepts(candidate, state, new Vector<String>()) ? "1" : "0";
+    }
+    Vector<Vector<String>> W = new Vector<Vector<String>>();
+    W.add(new Vector<String>());
+    int classes = countClasses(signatures);
+
+    boolean added = true;
+    while ((classes < states) && added) {
+      added = false;
+      for (int i = 0; (i < W.size()) && (classes < states); i++) {
+        for (String symbol : alphabet) {
+          Vector<String> w = new Vector<String>(W.get(i).size() + 1);
+          w.add(symbol);
+          w.addAll(W.get(i));
+          if (W.contains(w)) {
+            continue;
+          }
+
+          String[] more = new String[states];
+          for (int state = 0; state < states; state++) {
+            more[state] = signatures[state] + (accepts(candidate, state, w) ? '1' : '0');
+          }
+          int moreClasses = countClasses(more);
+          if (moreClasses > classes) {
+            W.add(w);
+            signatures = more;
+            classes = moreClasses;
+            added = true;
+          }
+        }
+      }
+    }
+    return (W);
+  }
+
+  private static int countClasses(String[] signatures) {
+    return (new HashSet<String>(Arrays.asList(signatures)).size());
+  }
+
+  private static boolean accepts(Candidate candidate, AbstractList<String> sequence) {
+    return (accepts(candidate, 0, sequence));
+  }
+
+  /**
+   * Determines if a candidate accepts a sequence from a state.  State
+   * -1 is the error state, which it never leaves.
+   */
+  private static boolean accepts(Candidate candidate, int state,
+      AbstractList<String> sequence) {
+    for (int i = 0; (i < sequence.size()) && (state != -1); i++) {
+      state = candidate.getTransition(state, sequence.get(i));
+    }
+    return (state != -1);
+  }
+
+  public String toString() {
+    return ("conformance tests: " + candidates_ + " candidates, "
+        + recalled_ + " tests recalled, " + queries_ + " queries, "
+        + found_ + " counterexamples");
+  }
+}
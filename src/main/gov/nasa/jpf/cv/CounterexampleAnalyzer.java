@@ -0,0 +1,352 @@
+package gov.nasa.jpf.cv;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Turns a counterexample into the suffixes the learner adds to
+ * distinguish states.  The strategies differ in how many membership
+ * queries they ask per counterexample, and in how many suffixes they
+ * add, which decides how many equivalence queries are needed.
+ *
+ * Most strategies search for a breakpoint as in Rivest and Schapire:
+ * for a counterexample w = p_i r_i with |p_i| = i, alpha_i is the
+ * answer for the access sequence of the state the hypothesis reaches
+ * on p_i, followed by r_i.  alpha_0 is the answer for w itself and
+ * alpha_|w| is what the hypothesis says about w, so they differ, and
+ * somewhere alpha_i != alpha_(i+1).  The suffix r_(i+1) then separates
+ * two states.
+ *
+ * Every analyzer counts the counterexamples it was given and the
+ * alphas it computed, each of which is one membership query (less
+ * whatever the teacher has memoized).
+ */
+public abstract class CounterexampleAnalyzer {
+  /**
+   * What an analyzer needs from the learner
+   */
+  public interface Context {
+    /**
+     * Computes alpha_i for a counterexample
+     *
+     * @param counterExample the counterexample, without taus
+     * @param point i
+     *
+     * @return alpha_i
+     */
+    public boolean getAlpha(IntSequence counterExample, int point) throws SETException;
+
+    /**
+     * Determines if a sequence already has a row in the learner's
+     * table
+     *
+     * @param sequence the sequence
+     *
+     * @return true if the sequence is in S or SA
+     */
+    public boolean hasRow(IntSequence sequence);
+  }
+
+  /**
+   * The number of counterexamples analyzed
+   */
+  private long iterations_ = 0;
+
+  /**
+   * The number of alphas computed
+   */
+  private long queries_ = 0;
+
+  /**
+   * The alphas of the counterexample being analyzed
+   */
+  private HashMap<Integer, Boolean> alphas_ = new HashMap<Integer, Boolean>();
+
+  /**
+   * Creates an analyzer by name
+   *
+   * @param name one of rs, linear, linear_backward, exponential,
+   * all_suffixes and shahbaz_groz
+   *
+   * @return the analyzer, or null if the name is unknown
+   */
+  public static CounterexampleAnalyzer create(String name) {
+    if (name.equals("rs")) {
+      return (new RivestSchapire());
+    } else if (name.equals("linear")) {
+      return (new LinearForward());
+    } else if (name.equals("linear_backward")) {
+      return (new LinearBackward());
+    } else if (name.equals("exponential")) {
+      return (new Exponential());
+    } else if (name.equals("all_suffixes")) {
+      return (new AllSuffixes());
+    } else if (name.equals("shahbaz_groz")) {
+      return (new ShahbazGroz());
+    } else {
+      return (null);
+    }
+  }
+
+  /**
+   * Gets the name the analyzer is created by
+   */
+  public abstract String getName();
+
+  /**
+   * Analyzes a counterexample
+   *
+   * @param context the learner
+   * @param counterExample the counterexample, without taus
+   *
+   * @return the suffixes to add, some of which the learner may have
+   * already
+   */
+  public Vector<IntSequence> analyze(Context context, IntSequence counterExample)
+      throws SETException {
+    this.start();
+    return (this.getSuffixes(context, counterExample));
+  }
+
+  /**
+   * Starts the analysis of a new counterexample
+   */
+  protected void start() {
+    iterations_++;
+    alphas_.clear();
+  }
+
+  protected abstract Vector<IntSequence> getSuffixes(Context context,
+      IntSequence counterExample) throws SETException;
+
+  /**
+   * Gets the number of counterexamples analyzed
+   */
+  public long getIterations() {
+    return (iterations_);
+  }
+
+  /**
+   * Gets the number of membership queries asked while analyzing
+   */
+  public long getQueries() {
+    return (queries_);
+  }
+
+  /**
+   * Computes alpha_i, counting it the first time it is needed for the
+   * current counterexample
+   */
+  protected boolean alpha(Context context, IntSequence counterExample, int point)
+      throws SETException {
+    Integer key = new Integer(point);
+    Boolean alpha = alphas_.get(key);
+    if (alpha == null) {
+      queries_++;
+      alpha = Boolean.valueOf(context.getAlpha(counterExample, point));
+      alphas_.put(key, alpha);
+    }
+    return (alpha.booleanValue());
+  }
+
+  public String toString() {
+    return ("counterexample analysis " + getName() + ": " + iterations_
+        + " counterexamples, " + queries_ + " queries");
+  }
+
+  /**
+   * A strategy that finds a single breakpoint and adds the suffix
+   * after it
+   */
+  public static abstract class BreakpointSearch extends CounterexampleAnalyzer {
+    protected Vector<IntSequence> getSuffixes(Context context,
+        IntSequence counterExample) throws SETException {
+      int i = this.locate(context, counterExample);
+
+      // We want to add to E the sequence r_(i+1) where
+      // counterExample = p_(i+1) r_(i+1) and |p_(i+1)| = i+1.
+      Vector<IntSequence> suffixes = new Vector<IntSequence>(1);
+      suffixes.add(counterExample.suffix(i + 1));
+      return (suffixes);
+    }
+
+    /**
+     * Finds the breakpoint of a counterexample.  Also counts as an
+     * analyzed counterexample.
+     *
+     * @param context the learner
+     * @param counterExample the counterexample, without taus
+     *
+     * @return the i such that alpha_i != alpha_(i+1)
+     */
+    public int findBreakpoint(Context context, IntSequence counterExample)
+        throws SETException {
+      this.start();
+      return (this.locate(context, counterExample));
+    }
+
+    private int locate(Context context, IntSequence counterExample)
+        throws SETException {
+      int length = counterExample.length();
+      if (this.alpha(context, counterExample, 0) == this.alpha(context, counterExample, length)) {
+        throw (new SETException("counterexample " + counterExample
+            + " does not disagree with the hypothesis"));
+      }
+
+      return (this.search(context, counterExample, 0, length));
+    }
+
+    /**
+     * Searches for a breakpoint between low and high, where alpha_low
+     * != alpha_high
+     *
+     * @return the i such that alpha_i != alpha_(i+1), low <= i < high
+     */
+    protected abstract int search(Context context, IntSequence counterExample,
+        int low, int high) throws SETException;
+
+    /**
+     * Binary search between low and high, where alpha_low !=
+     * alpha_high
+     */
+    protected int binarySearch(Context context, IntSequence counterExample,
+        int low, int high) throws SETException {
+      boolean lowAlpha = this.alpha(context, counterExample, low);
+      while (high - low > 1) {
+        int mid = (low + high) / 2;
+        if (this.alpha(context, counterExample, mid) == lowAlpha) {
+          low = mid;
+        } else {
+          high = mid;
+        }
+      }
+      return (low);
+    }
+  }
+
+  /**
+   * Rivest and Schapire: binary search, log |w| queries
+   */
+  public static class RivestSchapire extends BreakpointSearch {
+    public String getName() {
+      return ("rs");
+    }
+
+    protected int search(Context context, IntSequence counterExample, int low,
+        int high) throws SETException {
+      return (this.binarySearch(context, counterExample, low, high));
+    }
+  }
+
+  /**
+   * Scans from the front, and finds the earliest breakpoint, which
+   * gives the longest suffix.  Cheap when counterexamples are short.
+   */
+  public static class LinearForward extends BreakpointSearch {
+    public String getName() {
+      return ("linear");
+    }
+
+    protected int search(Context context, IntSequence counterExample, int low,
+        int high) throws SETException {
+      boolean lowAlpha = this.alpha(context, counterExample, low);
+      for (int i = low + 1; i < high; i++) {
+        if (this.alpha(context, counterExample, i) != lowAlpha) {
+          return (i - 1);
+        }
+      }
+      return (high - 1);
+    }
+  }
+
+  /**
+   * Scans from the back, and finds the latest breakpoint, which gives
+   * the shortest suffix
+   */
+  public static class LinearBackward extends BreakpointSearch {
+    public String getName() {
+      return ("linear_backward");
+    }
+
+    protected int search(Context context, IntSequence counterExample, int low,
+        int high) throws SETException {
+      boolean highAlpha = this.alpha(context, counterExample, high);
+      for (int i = high - 1; i > low; i--) {
+        if (this.alpha(context, counterExample, i) != highAlpha) {
+          return (i);
+        }
+      }
+      return (low);
+    }
+  }
+
+  /**
+   * Gallops from the front with steps of 1, 2, 4, ... and then does a
+   * binary search in the last step.  Good for long counterexamples
+   * with an early breakpoint.
+   */
+  public static class Exponential extends BreakpointSearch {
+    public String getName() {
+      return ("exponential");
+    }
+
+    protected int search(Context context, IntSequence counterExample, int low,
+        int high) throws SETException {
+      boolean lowAlpha = this.alpha(context, counterExample, low);
+      int previous = low;
+      int step = 1;
+      while (previous + step < high) {
+        int next = previous + step;
+        if (this.alpha(context, counterExample, next) != lowAlpha) {
+          return (this.binarySearch(context, counterExample, previous, next));
+        }
+        previous = next;
+        step *= 2;
+      }
+      return (this.binarySearch(context, counterExample, previous, high));
+    }
+  }
+
+  /**
+   * Maler and Pnueli: adds every suffix of the counterexample, without
+   * asking anything
+   */
+  public static class AllSuffixes extends CounterexampleAnalyzer {
+    public String getName() {
+      return ("all_suffixes");
+    }
+
+    protected Vector<IntSequence> getSuffixes(Context context,
+        IntSequence counterExample) {
+      Vector<IntSequence> suffixes = new Vector<IntSequence>();
+      for (int i = 0; i < counterExample.length(); i++) {
+        suffixes.add(counterExample.suffix(i));
+      }
+      return (suffixes);
+    }
+  }
+
+  /**
+   * Shahbaz and Groz: strips the longest prefix that already has a row
+   * in the table, and adds every suffix of the rest
+   */
+  public static class ShahbazGroz extends CounterexampleAnalyzer {
+    public String getName() {
+      return ("shahbaz_groz");
+    }
+
+    protected Vector<IntSequence> getSuffixes(Context context,
+        IntSequence counterExample) {
+      int start = counterExample.length();
+      while ((start > 0) && !context.hasRow(counterExample.prefix(start))) {
+        start--;
+      }
+
+      Vector<IntSequence> suffixes = new Vector<IntSequence>();
+      for (int i = start; i < counterExample.length(); i++) {
+        suffixes.add(counterExample.suffix(i));
+      }
+      return (suffixes);
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package gov.nasa.jpf.cv;
+
+/**
+ * Shortens a counterexample before the learner analyzes it.  The
+ * counterexamples the teacher gives are JPF paths, which are often
+ * long and go around loops.  The suffix the analyzer finds in a long
+ * counterexample is long too, and every row added later asks a query
+ * with it.
+ *
+ * A shorter sequence is only used if it is still a counterexample,
+ * which takes a membership query (less whatever the learner or the
+ * teacher has memoized).  Two ways of finding one are tried, in order:
+ *
+ *   loops:  if the hypothesis is in the same state before and after a
+ *           part of the counterexample, the hypothesis says the same
+ *           about the counterexample without that part.
+ *   ddmin:  Zeller's delta debugging, removing ever smaller chunks of
+ *           the counterexample.
+ *
+ * At most budget queries are asked per counterexample.
+ */
+public class CounterexampleMinimizer {
+  /**
+   * What a minimizer needs from the learner.  The hypothesis starts in
+   * state 0.
+   */
+  public interface Context {
+    /**
+     * Gets the state the hypothesis moves to
+     *
+     * @param state the state it is in
+     * @param symbol the symbol it reads
+     *
+     * @return the next state
+     */
+    public int step(int state, int symbol);
+
+    /**
+     * Determines if the hypothesis accepts in a state
+     */
+    public boolean isAccepting(int state);
+
+    /**
+     * Asks the teacher if a sequence is accepted
+     */
+    public boolean query(IntSequence sequence) throws SETException;
+  }
+
+  private final boolean deltaDebugging_;
+
+  private final int budget_;
+
+  /**
+   * The queries left for the counterexample being minimized
+   */
+  private int left_;
+
+  /**
+   * The number of counterexamples minimized
+   */
+  private long iterations_ = 0;
+
+  /**
+   * The number of queries asked
+   */
+  private long queries_ = 0;
+
+  /**
+   * The total length of the counterexamples, before and after
+   */
+  private long lengthBefore_ = 0;
+
+  private long lengthAfter_ = 0;
+
+  /**
+   * Creates a minimizer by name
+   *
+   * @param name loops, or ddmin (which removes loops first)
+   * @param budget the most queries to ask per counterexample
+   *
+   * @return the minimizer, or null if the name is unknown
+   */
+  public static CounterexampleMinimizer create(String name, int budget) {
+    if (name.equals("loops")) {
+      return (new CounterexampleMinimizer(false, budget));
+    } else if (name.equals("ddmin")) {
+      return (new CounterexampleMinimizer(true, budget));
+    } else {
+      return (null);
+    }
+  }
+
+  public CounterexampleMinimizer(boolean deltaDebugging, int budget) {
+    deltaDebugging_ = deltaDebugging;
+    budget_ = budget;
+  }
+
+  /**
+   * Minimizes a counterexample
+   *
+   * @param context the learner
+   * @param counterExample the counterexample, without taus
+   *
+   * @return a counterexample no longer than the one given
+   */
+  public IntSequence minimize(Context context, IntSequence counterExample)
+      throws SETException {
+    iterations_++;
+    lengthBefore_ += counterExample.length();
+    left_ = budget_;
+
+    IntSequence shortest = this.removeLoops(context, counterExample);
+    if (deltaDebugging_) {
+      shortest = this.deltaDebug(context, shortest);
+    }
+
+    lengthAfter_ += shortest.length();
+    return (shortest);
+  }
+
+  /**
+   * Removes the longest loop of the hypothesis that can be removed,
+   * until there is none left or the budget is used up
+   */
+  private IntSequence removeLoops(Context context, IntSequence counterExample)
+      throws SETException {
+    IntSequence shortest = counterExample;
+    boolean removed = true;
+    while (removed && (left_ > 0)) {
+      removed = false;
+
+      // states[i] is the state after the first i symbols
+      int[] actions = shortest.toArray();
+      int[] states = new int[actions.length + 1];
+      for (int i = 0; i < actions.length; i++) {
+        states[i + 1] = context.step(states[i], actions[i]);
+      }
+
+      for (int i = 0; (i < actions.length) && !removed && (left_ > 0); i++) {
+        for (int j = actions.length; (j > i) && !removed && (left_ > 0); j--) {
+          if (states[i] == states[j]) {
+            IntSequence candidate = shortest.prefix(i).concat(shortest.suffix(j));
+            if (this.isCounterexample(context, candidate)) {
+              shortest = candidate;
+              removed = true;
+            }
+          }
+        }
+      }
+    }
+    return (shortest);
+  }
+
+  /**
+   * Removes chunks of the counterexample.  It starts with halves, and
+   * makes the chunks smaller whenever none of them can be removed.
+   */
+  private IntSequence deltaDebug(Context context, IntSequence counterExample)
+      throws SETException {
+    IntSequence shortest = counterExample;
+    int chunks = 2;
+    while ((shortest.length() >= 2) && (left_ > 0)) {
+      int length = shortest.length();
+      boolean removed = false;
+      for (int k = 0; (k < chunks) && !removed && (left_ > 0); k++) {
+        int start = k * length / chunks;
+        int end = (k + 1) * length / chunks;
+        if (start == end) {
+          continue;
+        }
+
+        IntSequence candidate = shortest.prefix(start).concat(shortest.suffix(end));
+        if (this.isCounterexample(context, candidate)) {
+          shortest = candidate;
+          removed = true;
+        }
+      }
+
+      if (removed) {
+        chunks = Math.max(chunks - 1, 2);
+      } else if (chunks >= length) {
+        break;
+      } else {
+        chunks = Math.min(chunks * 2, length);
+      }
+    }
+    return (shortest);
+  }
+
+  /**
+   * Determines if the teacher and the hypothesis disagree about a
+   * sequence, using up one query of the budget
+   */
+  private boolean isCounterexample(Context context, IntSequence sequence)
+      throws SETException {
+    int state = 0;
+    for (int i = 0; i < sequence.length(); i++) {
+      state = context.step(state, sequence.symbolAt(i));
+    }
+
+    left_--;
+    queries_++;
+    return (context.isAccepting(state) != context.query(sequence));
+  }
+
+  public String toString() {
+    return ("counterexample minimization: " + iterations_
+        + " counterexamples, " + queries_ + " queries, length "
+        + lengthBefore_ + " -> " + lengthAfter_);
+  }
+}
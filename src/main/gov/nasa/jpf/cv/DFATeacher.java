@@ -0,0 +1,138 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+ * A teacher that answers from an automaton in memory instead of
+ * running JPF, e.g. one read by TransitionsParser or a RandomDFA.  A
+ * query runs the automaton, from state 0, and a conjecture is compared
+ * with it exactly (see AutomatonEquivalence), so learning takes no
+ * longer than the learner itself needs.  This is meant for benchmarks
+ * and for checking the learners.
+ *
+ * As in SafetyAutomaton, a missing transition leads to the error
+ * state.  Queries are not memoized, since running the automaton costs
+ * less than looking them up; the conformance tests (see
+ * ConformanceTester) then only find counterexamples with batch.
+ * Messages are traced at level debug.
+ */
+public class DFATeacher extends AbstractTeacher {
+  /**
+   * The transitions by state and symbol, -1 for the error state
+   */
+  private final int[][] delta_;
+
+  private final Vector<String> alphabet_;
+
+  private final HashMap<String, Integer> symbols_;
+
+  /**
+   * The number of queries answered
+   */
+  private long queries_ = 0;
+
+  /**
+   * Creates a teacher for the automaton in a file
+   *
+   * @param fileName the file, in the notation TransitionsParser reads
+   */
+  public DFATeacher(String fileName) {
+    this(parse(fileName));
+  }
+
+  /**
+   * Creates a teacher for an automaton, with the symbols of its
+   * transitions as the alphabet
+   *
+   * @param fsm the automaton, which is not changed later
+   */
+  public DFATeacher(FSM fsm) {
+    this(fsm, new TreeSet<String>(fsm.getAlphabet()));
+  }
+
+  /**
+   * Creates a teacher for an automaton
+   *
+   * @param fsm the automaton, which is not changed later
+   * @param alphabet the alphabet, in which the symbols the automaton
+   *          has no transitions for lead to the error state
+   */
+  public DFATeacher(FSM fsm, Collection<String> alphabet) {
+    alphabet_ = new Vector<String>(alphabet);
+    symbols_ = new HashMap<String, Integer>();
+    for (int a = 0; a < alphabet_.size(); a++) {
+      symbols_.put(alphabet_.get(a), new Integer(a));
+    }
+
+    delta_ = AutomatonEquivalence.toTable(fsm, alphabet_);
+  }
+
+  private static FSM parse(String fileName) {
+    FSM fsm = new FSM();
+    new TransitionsParser(fileName).parse(fsm);
+    return (fsm);
+  }
+
+  public int numberOfStates() {
+    return (delta_.length);
+  }
+
+  public long getQueries() {
+    return (queries_);
+  }
+
+  public boolean query(AbstractList<String> sequence) throws SETException {
+    queries_++;
+
+    int state = 0;
+    for (int i = 0; (i < sequence.size()) && (state != -1); i++) {
+      Integer symbol = symbols_.get(sequence.get(i));
+      if (symbol == null) {
+        throw (new SETException("symbol " + sequence.get(i) + " is not in the alphabet"));
+      }
+      state = delta_[state][symbol.intValue()];
+    }
+    return (state != -1);
+  }
+
+  /**
+   * Compares a candidate with the automaton
+   *
+   * @return a shortest sequence they disagree about, or null if they
+   *         accept the same sequences
+   */
+  public Vector conjecture(Candidate candidate) throws SETException {
+    Vector counterexample = this.testConformance(candidate);
+    if (counterexample != null) {
+      return (counterexample);
+    }
+    this.countConjecture();
+
+    return (AutomatonEquivalence.distinguish(
+        AutomatonEquivalence.toTable(candidate, alphabet_), delta_, alphabet_));
+  }
+
+  public void println(String s) {
+    Trace.log(Trace.DEBUG, s);
+  }
+
+  public void print(String s) {
+    Trace.log(Trace.DEBUG, s);
+  }
+
+  public Iterator getAlphabet() {
+    return (alphabet_.iterator());
+  }
+
+  public Object getAssumption(Candidate candidate) {
+    return (candidate);
+  }
+
+  public void setSETLearner(SETLearner set) {
+  }
+}
@@ -0,0 +1,561 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * Learns an assumption with a discrimination tree (Kearns and
+ * Vazirani) instead of an observation table.
+ *
+ * Every state of the hypothesis has an access sequence, and sits at a
+ * leaf of a binary tree whose inner nodes are labelled with
+ * discriminators (suffixes).  The target of a transition is found by
+ * sifting the access sequence of its source plus its action down the
+ * tree, asking one query per inner node on the way.  Two states are
+ * only ever compared on the discriminators that separate them, so far
+ * fewer queries are asked than there are cells in the SET table.
+ *
+ * Counterexamples are analysed by a breakpoint search, Rivest and
+ * Schapire's unless another is set.  The breakpoint gives a transition whose target has to be
+ * split, and the suffix after it separates the two; only the
+ * transitions that went to the split state are sifted again, and only
+ * from the new inner node down.
+ */
+public class DiscriminationTreeLearner implements AssumptionLearner {
+  /**
+   * The teacher for this learner
+   */
+  private MinimallyAdequateTeacher teacher_;
+
+  /**
+   * The alphabet, interned
+   */
+  private SymbolTable symbols_;
+
+  /**
+   * The root of the tree.  Its discriminator is lambda, so its
+   * children separate the accepting states from the rejecting ones.
+   */
+  private Node root_;
+
+  /**
+   * The access sequence of each state
+   */
+  private Vector<IntSequence> access_;
+
+  /**
+   * The leaf of each state
+   */
+  private Vector<Node> leaves_;
+
+  /**
+   * The target of each transition, indexed by state and symbol ID, or
+   * -1 if it is not known yet
+   */
+  private Vector<int[]> delta_;
+
+  /**
+   * The transitions whose target has to be found, and the node to
+   * start sifting them at
+   */
+  private Vector<int[]> pendingTransitions_;
+
+  private Vector<Node> pendingStarts_;
+
+  /**
+   * The answers to the queries asked so far.  The teacher memoizes
+   * too, but this saves converting the sequences.
+   */
+  private HashMap<IntSequence, Boolean> answers_;
+
+  /**
+   * Finds the breakpoints of counterexamples
+   */
+  private CounterexampleAnalyzer.BreakpointSearch analyzer_;
+
+  /**
+   * Shortens counterexamples before they are analyzed, or null
+   */
+  private CounterexampleMinimizer minimizer_;
+
+  public DiscriminationTreeLearner(MinimallyAdequateTeacher teacher) {
+    teacher_ = teacher;
+
+    symbols_ = new SymbolTable(teacher_.getAlphabet());
+    access_ = new Vector<IntSequence>();
+    leaves_ = new Vector<Node>();
+    delta_ = new Vector<int[]>();
+    pendingTransitions_ = new Vector<int[]>();
+    pendingStarts_ = new Vector<Node>();
+    answers_ = new HashMap<IntSequence, Boolean>();
+    root_ = new Node(null, symbols_.lambda());
+    analyzer_ = new CounterexampleAnalyzer.RivestSchapire();
+  }
+
+  /**
+   * Sets the strategy used to find breakpoints in counterexamples.
+   * The strategies that add more than one suffix don't apply to a
+   * discrimination tree.  The default is Rivest and Schapire's binary
+   * search.
+   *
+   * @param analyzer the strategy
+   */
+  public void setCounterexampleAnalyzer(CounterexampleAnalyzer.BreakpointSearch analyzer) {
+    analyzer_ = analyzer;
+  }
+
+  /**
+   * Sets how counterexamples are shortened before they are analyzed.
+   * By default they are not.
+   *
+   * @param minimizer the minimizer, or null
+   */
+  public void setCounterexampleMinimizer(CounterexampleMinimizer minimizer) {
+    minimizer_ = minimizer;
+  }
+
+  /**
+   * Gets the assumption generated by the learner
+   *
+   * @return the assumption generated by the learner, or null if
+   *         no assumption can help
+   */
+  public Object getAssumption() throws SETException {
+    // lambda is the initial state, sifting it asks if it is accepting
+    IntSequence[] initial = { symbols_.lambda() };
+    Node[] starts = { root_ };
+    this.sift(initial, starts);
+
+    while (true) {
+      // Find the targets of all the transitions
+      this.closeTransitions();
+
+      Candidate candidate = this.getCandidate();
+
+      if (candidate == null) {
+        teacher_.println("\n*** Assumption is null ***");
+        return (null);
+      }
+
+      // Make the conjecture
+      LearningMetrics.set("dt.states", access_.size());
+      Vector counterExample = teacher_.conjecture(candidate);
+
+      if (counterExample == null) {
+        teacher_.println("Hypothesis is correct.  Finished");
+        teacher_.println(analyzer_.toString());
+        if (minimizer_ != null) {
+          teacher_.println(minimizer_.toString());
+        }
+        return (teacher_.getAssumption(candidate));
+      } else {
+        teacher_.println("Hypothesis is incorrect.  Counterexample is:");
+        for (Iterator actions = counterExample.iterator(); actions.hasNext();) {
+          teacher_.println("\t" + (String) actions.next());
+        }
+        this.refine(counterExample);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of states of the hypothesis
+   *
+   * @return the number of states
+   */
+  public int numberOfStates() {
+    return (access_.size());
+  }
+
+  /**
+   * Builds the candidate from the hypothesis.  The rejecting state, if
+   * there is one, is the error state -1 and its transitions are left
+   * out.
+   *
+   * @return the candidate, or null if lambda is rejected
+   */
+  private Candidate getCandidate() {
+    if (!this.isAccepting(0)) {
+      return (null);
+    }
+
+    TreeMap assumptionStateToS = new TreeMap();
+    int[] stateToID = new int[access_.size()];
+    int nextID = 1;
+    for (int state = 0; state < access_.size(); state++) {
+      if (!this.isAccepting(state)) {
+        // States that reject can't accept again, so they all behave
+        // the same and there is only one
+        if (assumptionStateToS.containsKey(new Integer(-1))) {
+          throw (new RuntimeException("More than one" + " non-accepting state"));
+        }
+        stateToID[state] = -1;
+      } else if (state == 0) {
+        stateToID[state] = 0;
+      } else {
+        stateToID[state] = nextID++;
+      }
+      assumptionStateToS.put(new Integer(stateToID[state]), access_.get(state).toList());
+    }
+
+    Candidate candidate = new Candidate(nextID, assumptionStateToS, symbols_);
+
+    for (int state = 0; state < access_.size(); state++) {
+      if (stateToID[state] < 0) {
+        continue;
+      }
+
+      int[] targets = delta_.get(state);
+      for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+        int next = stateToID[targets[AElem]];
+        if (next >= 0) {
+          candidate.setTransition(stateToID[state], AElem, next);
+        }
+      }
+    }
+
+    return (candidate);
+  }
+
+  /**
+   * Determines if a state is accepting, from the side of the root it
+   * is on
+   */
+  private boolean isAccepting(int state) {
+    Node node = leaves_.get(state);
+    while (node.parent_ != root_) {
+      node = node.parent_;
+    }
+    return (root_.children_[1] == node);
+  }
+
+  //
+  //
+  // Methods for building the hypothesis
+  //
+  //
+
+  /**
+   * Adds a state
+   *
+   * @param access the access sequence of the state
+   * @param leaf the leaf of the state
+   *
+   * @return the state
+   */
+  private int addState(IntSequence access, Node leaf) {
+    int state = access_.size();
+    teacher_.println("New state " + state + ": " + access);
+
+    access_.add(access);
+    leaves_.add(leaf);
+    leaf.state_ = state;
+
+    int[] targets = new int[symbols_.size()];
+    for (int AElem = 0; AElem < targets.length; AElem++) {
+      targets[AElem] = -1;
+      pendingTransitions_.add(new int[] { state, AElem });
+      pendingStarts_.add(root_);
+    }
+    delta_.add(targets);
+
+    return (state);
+  }
+
+  /**
+   * Sifts the pending transitions, until every transition has a
+   * target.  Sifting can find new states, whose transitions are then
+   * sifted as well.
+   */
+  private void closeTransitions() throws SETException {
+    while (!pendingTransitions_.isEmpty()) {
+      int count = pendingTransitions_.size();
+      IntSequence[] sequences = new IntSequence[count];
+      Node[] starts = pendingStarts_.toArray(new Node[count]);
+      int[][] transitions = pendingTransitions_.toArray(new int[count][]);
+      pendingTransitions_.clear();
+      pendingStarts_.clear();
+
+      for (int i = 0; i < count; i++) {
+        sequences[i] = access_.get(transitions[i][0]).append(transitions[i][1]);
+      }
+
+      int[] targets = this.sift(sequences, starts);
+      for (int i = 0; i < count; i++) {
+        delta_.get(transitions[i][0])[transitions[i][1]] = targets[i];
+      }
+    }
+  }
+
+  /**
+   * Sifts sequences down the tree, all of them together so the queries
+   * for each level are asked in one batch.  A sequence that falls off
+   * the tree becomes a new state.
+   *
+   * @param sequences the sequences
+   * @param starts the node to start each sequence at
+   *
+   * @return the state each sequence ends up in
+   */
+  private int[] sift(IntSequence[] sequences, Node[] starts) throws SETException {
+    Node[] at = starts.clone();
+    int[] states = new int[sequences.length];
+
+    while (true) {
+      Vector<IntSequence> queries = new Vector<IntSequence>();
+      for (int i = 0; i < sequences.length; i++) {
+        if (at[i].discriminator_ != null) {
+          queries.add(sequences[i].concat(at[i].discriminator_));
+        }
+      }
+      if (queries.isEmpty()) {
+        break;
+      }
+
+      boolean[] answers = this.query(queries);
+
+      int q = 0;
+      for (int i = 0; i < sequences.length; i++) {
+        if (at[i].discriminator_ == null) {
+          continue;
+        }
+
+        int side = answers[q++] ? 1 : 0;
+        Node child = at[i].children_[side];
+        if (child == null) {
+          // Nothing seen so far goes this way, so this is a new state
+          child = new Node(at[i], null);
+          at[i].children_[side] = child;
+          this.addState(sequences[i], child);
+        }
+        at[i] = child;
+      }
+    }
+
+    for (int i = 0; i < sequences.length; i++) {
+      states[i] = at[i].state_;
+    }
+    return (states);
+  }
+
+  //
+  //
+  // Methods for handling counterexamples
+  //
+  //
+
+  /**
+   * Refines the hypothesis with a counterexample, until the hypothesis
+   * agrees with the teacher on it.  A single counterexample can show
+   * more than one missing state, and finding those here saves asking
+   * the teacher for another one.
+   *
+   * @param counterExample the counterexample
+   */
+  private void refine(Vector counterExample) throws SETException {
+    // Eliminate taus (and anything else outside the alphabet) from
+    // the counter example
+    IntSequence tauless = symbols_.lambda();
+    for (Iterator actions = counterExample.iterator(); actions.hasNext();) {
+      int action = symbols_.getId((String) actions.next());
+
+      if (action >= 0) {
+        tauless = tauless.append(action);
+      }
+    }
+
+    if (minimizer_ != null) {
+      CounterexampleMinimizer.Context context = new CounterexampleMinimizer.Context() {
+        public int step(int state, int symbol) {
+          return (delta_.get(state)[symbol]);
+        }
+
+        public boolean isAccepting(int state) {
+          return (DiscriminationTreeLearner.this.isAccepting(state));
+        }
+
+        public boolean query(IntSequence sequence) throws SETException {
+          return (DiscriminationTreeLearner.this.query(sequence));
+        }
+      };
+      tauless = minimizer_.minimize(context, tauless);
+    }
+
+    boolean accepts = this.query(tauless);
+    boolean split = false;
+    while (this.isAccepting(this.run(tauless, tauless.length())) != accepts) {
+      this.split(tauless);
+      this.closeTransitions();
+      split = true;
+    }
+
+    if (!split) {
+      throw (new SETException("counterexample " + tauless
+          + " does not disagree with the hypothesis"));
+    }
+  }
+
+  /**
+   * Splits a state with a counterexample.  The analyzer finds an i
+   * such that alpha_i != alpha_(i+1), where alpha_i is the answer for
+   * the access sequence of the state the hypothesis is in after the
+   * first i symbols, followed by the rest of the counterexample.  The
+   * target of the transition taken at i is then split by the rest of
+   * the counterexample after i+1.
+   *
+   * @param counterExample the counterexample, without taus
+   */
+  private void split(IntSequence counterExample) throws SETException {
+    CounterexampleAnalyzer.Context context = new CounterexampleAnalyzer.Context() {
+      public boolean getAlpha(IntSequence counterExample, int point)
+          throws SETException {
+        return (DiscriminationTreeLearner.this.getAlpha(counterExample, point));
+      }
+
+      public boolean hasRow(IntSequence sequence) {
+        return (access_.contains(sequence));
+      }
+    };
+    int lo = analyzer_.findBreakpoint(context, counterExample);
+
+    int source = this.run(counterExample, lo);
+    int AElem = counterExample.symbolAt(lo);
+    int old = delta_.get(source)[AElem];
+    IntSequence discriminator = counterExample.suffix(lo + 1);
+    IntSequence access = access_.get(source).append(AElem);
+
+    // The new state is the one reached by the transition, the old one
+    // keeps its access sequence.  The discriminator tells them apart.
+    boolean newSide = this.query(access.concat(discriminator));
+    boolean oldSide = this.query(access_.get(old).concat(discriminator));
+    if (newSide == oldSide) {
+      throw (new SETException("counterexample " + counterExample
+          + " does not split state " + old));
+    }
+
+    teacher_.println("Splitting state " + old + " with " + discriminator);
+
+    Node leaf = leaves_.get(old);
+    Node oldLeaf = new Node(leaf, null);
+    Node newLeaf = new Node(leaf, null);
+    leaf.discriminator_ = discriminator;
+    leaf.children_[oldSide ? 1 : 0] = oldLeaf;
+    leaf.children_[newSide ? 1 : 0] = newLeaf;
+    oldLeaf.state_ = old;
+    leaves_.set(old, oldLeaf);
+
+    int state = this.addState(access, newLeaf);
+    delta_.get(source)[AElem] = state;
+
+    // Transitions that went to the old state now have to choose
+    // between the two, everything else is unchanged
+    for (int s = 0; s < delta_.size(); s++) {
+      int[] targets = delta_.get(s);
+      for (int a = 0; a < targets.length; a++) {
+        if (targets[a] == old) {
+          targets[a] = -1;
+          pendingTransitions_.add(new int[] { s, a });
+          pendingStarts_.add(leaf);
+        }
+      }
+    }
+  }
+
+  /**
+   * For a given counterexample and a point in the counterexample i,
+   * computes alpha_i.
+   */
+  private boolean getAlpha(IntSequence counterExample, int point) throws SETException {
+    int state = this.run(counterExample, point);
+    return (this.query(access_.get(state).concat(counterExample.suffix(point))));
+  }
+
+  /**
+   * Runs the hypothesis on a prefix of a sequence
+   *
+   * @param sequence the sequence
+   * @param length how much of the sequence to run
+   *
+   * @return the state the hypothesis ends up in
+   */
+  private int run(IntSequence sequence, int length) {
+    int[] actions = sequence.toArray();
+    int state = 0;
+    for (int i = 0; i < length; i++) {
+      state = delta_.get(state)[actions[i]];
+    }
+    return (state);
+  }
+
+  //
+  //
+  // Methods for asking the teacher
+  //
+  //
+
+  private boolean query(IntSequence sequence) throws SETException {
+    Vector<IntSequence> sequences = new Vector<IntSequence>(1);
+    sequences.add(sequence);
+    return (this.query(sequences)[0]);
+  }
+
+  /**
+   * Asks the teacher about sequences in one batch.  Sequences that
+   * have been asked before are answered from memory.
+   */
+  private boolean[] query(Vector<IntSequence> sequences) throws SETException {
+    boolean[] answers = new boolean[sequences.size()];
+
+    HashMap<IntSequence, Integer> asked = new HashMap<IntSequence, Integer>();
+    Vector<IntSequence> unknown = new Vector<IntSequence>();
+    for (IntSequence sequence : sequences) {
+      if (!answers_.containsKey(sequence) && !asked.containsKey(sequence)) {
+        asked.put(sequence, new Integer(unknown.size()));
+        unknown.add(sequence);
+      }
+    }
+
+    if (!unknown.isEmpty()) {
+      Vector<AbstractList<String>> queries = new Vector<AbstractList<String>>(unknown.size());
+      for (IntSequence sequence : unknown) {
+        queries.add(sequence.toList());
+      }
+
+      boolean[] results = teacher_.queryBatch(queries);
+      for (int i = 0; i < results.length; i++) {
+        if (Trace.isEnabled(Trace.DEBUG)) {
+          Trace.log(Trace.DEBUG, unknown.get(i), ":  ", results[i]);
+        }
+        answers_.put(unknown.get(i), Boolean.valueOf(results[i]));
+      }
+    }
+
+    for (int i = 0; i < answers.length; i++) {
+      answers[i] = answers_.get(sequences.get(i)).booleanValue();
+    }
+    return (answers);
+  }
+
+  /**
+   * A node of the tree.  Inner nodes have a discriminator and two
+   * children, for the sequences the discriminator rejects (0) and
+   * accepts (1).  Leaves have a state.
+   */
+  private static final class Node {
+    final Node parent_;
+
+    IntSequence discriminator_;
+
+    final Node[] children_ = new Node[2];
+
+    int state_ = -1;
+
+    Node(Node parent, IntSequence discriminator) {
+      parent_ = parent;
+      discriminator_ = discriminator;
+    }
+  }
+} // end class DiscriminationTreeLearner
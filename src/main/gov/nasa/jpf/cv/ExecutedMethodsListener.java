@@ -0,0 +1,33 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.MethodInfo;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records the methods executed during a JPF run, on any path of the
+ * search.  A method is named by its class name, a dot and its name and
+ * signature, as in BytecodeDigests.
+ */
+public class ExecutedMethodsListener extends ListenerAdapter {
+  private final HashSet<String> methods_ = new HashSet<String>();
+
+  public void methodEntered(JVM vm) {
+    MethodInfo mi = vm.getLastMethodInfo();
+    if (mi != null) {
+      methods_.add(mi.getClassName() + "." + mi.getUniqueName());
+    }
+  }
+
+  /**
+   * Gets the methods executed so far
+   *
+   * @return the method names
+   */
+  public Set<String> getMethods() {
+    return (methods_);
+  }
+}
@@ -77,12 +77,13 @@ public class FSM implements Visitor {
 	public synchronized void setTransition(String start, String action,
 			String end) {
 		Integer startId = _stateNameToId.get(start);
-		Integer endId = _stateNameToId.get(end);
 		if (startId == null) {
 			startId = _nextId++;
 			_stateNameToId.put(start, startId);
 			_stateIdToName.put(startId, start);
 		}
+		// looked up after the start, which may be the same new state
+		Integer endId = _stateNameToId.get(end);
 		if (endId == null) {
 			endId = _nextId++;
 			_stateNameToId.put(end, endId);
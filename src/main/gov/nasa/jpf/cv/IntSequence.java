@@ -0,0 +1,347 @@
+package gov.nasa.jpf.cv;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * An immutable sequence of symbol IDs from a SymbolTable.
+ *
+ * Sequences are kept in a tree rooted at the table's lambda: each
+ * sequence is its prefix plus one last symbol, and appending a symbol
+ * returns the same child for as long as the child is in use.  Sequences
+ * therefore share their prefixes, and two sequences of the same table
+ * are equal exactly when they are the same object, so they can be used
+ * as keys in HashMaps and HashSets without any element by element
+ * comparison.
+ *
+ * A sequence only refers weakly to its children, so the tree holds no
+ * more sequences than the learner and its tables do.  A sequence
+ * nobody refers to any more is collected, and built again if it is
+ * needed later; nothing can tell the two apart.
+ *
+ * The tree is not synchronized; sequences are built by the learner's
+ * thread.
+ */
+public final class IntSequence {
+  /**
+   * The table the symbols come from
+   */
+  private final SymbolTable symbols_;
+
+  /**
+   * The sequence without its last symbol, or null for lambda
+   */
+  private final IntSequence prefix_;
+
+  /**
+   * The last symbol, or -1 for lambda
+   */
+  private final int symbol_;
+
+  /**
+   * The number of symbols
+   */
+  private final int length_;
+
+  /**
+   * The cached hash code
+   */
+  private final int hash_;
+
+  /**
+   * The extensions of this sequence by one symbol.  While there are few,
+   * they are sorted by the symbol IDs in childSymbols_; once they would
+   * take as much room as one slot per symbol, they are indexed by symbol
+   * ID instead and childSymbols_ is null.  Created on the first append.
+   */
+  private WeakReference<IntSequence>[] children_;
+
+  private int[] childSymbols_;
+
+  private int childCount_;
+
+  /**
+   * Creates lambda for a table
+   *
+   * @param symbols the table
+   */
+  IntSequence(SymbolTable symbols) {
+    symbols_ = symbols;
+    prefix_ = null;
+    symbol_ = -1;
+    length_ = 0;
+    hash_ = 1;
+  }
+
+  private IntSequence(IntSequence prefix, int symbol) {
+    symbols_ = prefix.symbols_;
+    prefix_ = prefix;
+    symbol_ = symbol;
+    length_ = prefix.length_ + 1;
+    hash_ = 31 * prefix.hash_ + symbol + 1;
+  }
+
+  /**
+   * Gets the table the symbols come from
+   *
+   * @return the symbol table
+   */
+  public SymbolTable getSymbolTable() {
+    return (symbols_);
+  }
+
+  /**
+   * Gets the number of symbols in the sequence
+   *
+   * @return the length
+   */
+  public int length() {
+    return (length_);
+  }
+
+  /**
+   * Gets the last symbol
+   *
+   * @return the last symbol ID, or -1 for lambda
+   */
+  public int lastSymbol() {
+    return (symbol_);
+  }
+
+  /**
+   * Gets the sequence without its last symbol
+   *
+   * @return the prefix, or null for lambda
+   */
+  public IntSequence getPrefix() {
+    return (prefix_);
+  }
+
+  /**
+   * Gets a symbol
+   *
+   * @param index the position of the symbol
+   * @return the symbol ID
+   */
+  public int symbolAt(int index) {
+    if ((index < 0) || (index >= length_)) {
+      throw (new IndexOutOfBoundsException("index " + index + ", length "
+          + length_));
+    }
+
+    IntSequence node = this;
+    for (int i = length_ - 1; i > index; i--) {
+      node = node.prefix_;
+    }
+    return (node.symbol_);
+  }
+
+  /**
+   * Extends the sequence by one symbol
+   *
+   * @param symbol the symbol ID
+   * @return the extended sequence
+   */
+  public IntSequence append(int symbol) {
+    int index = this.findChild(symbol);
+    IntSequence child = (index >= 0) ? children_[index].get() : null;
+    if (child == null) {
+      child = new IntSequence(this, symbol);
+      if (index >= 0) {
+        children_[index] = new WeakReference<IntSequence>(child);
+      } else {
+        this.addChild(symbol, child);
+      }
+    }
+    return (child);
+  }
+
+  /**
+   * Finds the slot of a child
+   *
+   * @return the index in children_, or a negative number if there is no
+   *         slot for the symbol
+   */
+  private int findChild(int symbol) {
+    if (children_ == null) {
+      return (-1);
+    } else if (childSymbols_ == null) {
+      return ((children_[symbol] == null) ? -1 : symbol);
+    } else {
+      return (Arrays.binarySearch(childSymbols_, 0, childCount_, symbol));
+    }
+  }
+
+  private void addChild(int symbol, IntSequence child) {
+    if (children_ == null) {
+      children_ = newChildren(2);
+      childSymbols_ = new int[2];
+    } else if ((childSymbols_ != null) && (childCount_ == children_.length)) {
+      this.dropCollected();
+      if (childCount_ == children_.length) {
+        this.growChildren();
+      }
+    }
+
+    WeakReference<IntSequence> reference = new WeakReference<IntSequence>(child);
+    if (childSymbols_ == null) {
+      children_[symbol] = reference;
+    } else {
+      int index = -Arrays.binarySearch(childSymbols_, 0, childCount_, symbol) - 1;
+      System.arraycopy(childSymbols_, index, childSymbols_, index + 1, childCount_ - index);
+      System.arraycopy(children_, index, children_, index + 1, childCount_ - index);
+      childSymbols_[index] = symbol;
+      children_[index] = reference;
+      childCount_++;
+    }
+  }
+
+  /**
+   * Doubles the sorted children, or indexes them by symbol ID once a
+   * slot per symbol takes no more room: a sorted child takes a
+   * reference and an int, an indexed one a reference
+   */
+  private void growChildren() {
+    int size = 2 * children_.length;
+    if (4 * size < symbols_.size()) {
+      children_ = Arrays.copyOf(children_, size);
+      childSymbols_ = Arrays.copyOf(childSymbols_, size);
+    } else {
+      WeakReference<IntSequence>[] indexed = newChildren(symbols_.size());
+      for (int i = 0; i < childCount_; i++) {
+        indexed[childSymbols_[i]] = children_[i];
+      }
+      children_ = indexed;
+      childSymbols_ = null;
+    }
+  }
+
+  /**
+   * Forgets the sorted children that were collected
+   */
+  private void dropCollected() {
+    int kept = 0;
+    for (int i = 0; i < childCount_; i++) {
+      if (children_[i].get() != null) {
+        childSymbols_[kept] = childSymbols_[i];
+        children_[kept++] = children_[i];
+      }
+    }
+    Arrays.fill(children_, kept, childCount_, null);
+    childCount_ = kept;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static WeakReference<IntSequence>[] newChildren(int size) {
+    return (new WeakReference[size]);
+  }
+
+  /**
+   * Extends the sequence by another sequence
+   *
+   * @param suffix the sequence to append
+   * @return the concatenation
+   */
+  public IntSequence concat(IntSequence suffix) {
+    if (suffix.length_ == 0) {
+      return (this);
+    }
+
+    IntSequence result = this;
+    int[] symbols = suffix.toArray();
+    for (int i = 0; i < symbols.length; i++) {
+      result = result.append(symbols[i]);
+    }
+    return (result);
+  }
+
+  /**
+   * Gets a prefix of the sequence
+   *
+   * @param length the length of the prefix
+   * @return the first length symbols
+   */
+  public IntSequence prefix(int length) {
+    IntSequence node = this;
+    while (node.length_ > length) {
+      node = node.prefix_;
+    }
+    return (node);
+  }
+
+  /**
+   * Gets a suffix of the sequence
+   *
+   * @param start the position the suffix starts at
+   * @return the symbols from start to the end
+   */
+  public IntSequence suffix(int start) {
+    IntSequence result = symbols_.lambda();
+    int[] symbols = this.toArray();
+    for (int i = start; i < symbols.length; i++) {
+      result = result.append(symbols[i]);
+    }
+    return (result);
+  }
+
+  /**
+   * Copies the symbols into an array
+   *
+   * @return the symbol IDs
+   */
+  public int[] toArray() {
+    int[] symbols = new int[length_];
+    IntSequence node = this;
+    for (int i = length_ - 1; i >= 0; i--) {
+      symbols[i] = node.symbol_;
+      node = node.prefix_;
+    }
+    return (symbols);
+  }
+
+  /**
+   * Converts the sequence back into symbols, in the form the teacher
+   * takes queries in
+   *
+   * @return a Vector of the symbols
+   */
+  public Vector<String> toList() {
+    String[] symbols = new String[length_];
+    IntSequence node = this;
+    for (int i = length_ - 1; i >= 0; i--) {
+      symbols[i] = symbols_.getSymbol(node.symbol_);
+      node = node.prefix_;
+    }
+
+    Vector<String> list = new Vector<String>(length_);
+    for (int i = 0; i < symbols.length; i++) {
+      list.add(symbols[i]);
+    }
+    return (list);
+  }
+
+  public int hashCode() {
+    return (hash_);
+  }
+
+  /**
+   * Returns a string representation of a sequence.  An empty sequence
+   * is printed as lambda.
+   */
+  public String toString() {
+    if (length_ == 0) {
+      return ("lambda");
+    }
+
+    StringBuilder toReturn = new StringBuilder();
+    int[] symbols = this.toArray();
+    for (int i = 0; i < symbols.length; i++) {
+      if (i > 0) {
+        toReturn.append(", ");
+      }
+      toReturn.append(symbols_.getSymbol(symbols[i]));
+    }
+    return (toReturn.toString());
+  }
+} // end class IntSequence
@@ -0,0 +1,208 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Saves the state of a learning run, so that it can be resumed after
+ * the process dies.  A checkpoint holds the alphabet, the teacher's
+ * MemoizeTable and the SETLearner's S, E and T, in a binary file:
+ *
+ *   magic, version
+ *   alphabet:  count, symbols
+ *   memoize table  (see MemoizeTable.write)
+ *   table          (see SETLearner.writeTable)
+ *
+ * A checkpoint is written to a temporary file first, which then
+ * replaces the old one, so the file always holds a complete
+ * checkpoint.
+ *
+ * The file is assumption.checkpoint.file.  It is written at most every
+ * assumption.checkpoint.interval seconds (default 600), whenever the
+ * learner has filled in a batch of entries.  With assumption.checkpoint.resume the run starts
+ * from the file, if there is one.
+ */
+public class LearnerCheckpoint {
+  private static final int MAGIC = 0x43564350; // "CVCP"
+
+  private static final int VERSION = 3;
+
+  private final File file_;
+
+  private final long intervalMillis_;
+
+  private final AbstractTeacher teacher_;
+
+  private long lastSave_;
+
+  /**
+   * Creates the checkpoint configured by conf
+   *
+   * @param conf the configuration
+   * @param teacher the teacher whose answers are saved
+   *
+   * @return the checkpoint, or null if none is configured
+   */
+  public static LearnerCheckpoint create(Config conf, AbstractTeacher teacher) {
+    String file = conf.getString("assumption.checkpoint.file");
+    if (file == null) {
+      return (null);
+    }
+    long interval = 1000L * conf.getInt("assumption.checkpoint.interval", 600);
+    return (new LearnerCheckpoint(new File(file), interval, teacher));
+  }
+
+  public LearnerCheckpoint(File file, long intervalMillis, AbstractTeacher teacher) {
+    file_ = file;
+    intervalMillis_ = intervalMillis;
+    teacher_ = teacher;
+    lastSave_ = System.currentTimeMillis();
+  }
+
+  /**
+   * Determines if there is a checkpoint to resume from
+   */
+  public boolean exists() {
+    return (file_.isFile());
+  }
+
+  /**
+   * Determines if the interval has passed since the last save
+   */
+  public boolean isDue() {
+    return (System.currentTimeMillis() - lastSave_ >= intervalMillis_);
+  }
+
+  /**
+   * Saves the learner and the teacher's answers.  Failing to save is
+   * reported, but doesn't stop the run.
+   *
+   * @param learner the learner
+   */
+  public void save(SETLearner learner) {
+    long start = System.currentTimeMillis();
+    File temp = new File(file_.getPath() + ".tmp");
+
+    try {
+      FileOutputStream stream = new FileOutputStream(temp);
+      try {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeAlphabet(out);
+        teacher_.getMemoizeTable().write(out);
+        learner.writeTable(out);
+        out.flush();
+        stream.getFD().sync();
+      } finally {
+        stream.close();
+      }
+
+      // renameTo doesn't replace an existing file everywhere
+      if (!temp.renameTo(file_)) {
+        file_.delete();
+        if (!temp.renameTo(file_)) {
+          throw (new IOException("cannot rename " + temp + " to " + file_));
+        }
+      }
+
+      lastSave_ = System.currentTimeMillis();
+      teacher_.println("Saved checkpoint " + file_ + " in "
+          + (lastSave_ - start) + "ms");
+    } catch (IOException x) {
+      teacher_.println("WARNING: could not save checkpoint " + file_ + ": " + x);
+      temp.delete();
+    }
+  }
+
+  /**
+   * Resumes a run.  The teacher gets the saved answers before the
+   * learner is created, so setting up the learner doesn't run any
+   * query again.
+   *
+   * If the code may have changed since the checkpoint, the saved
+   * answers are not used, and every entry of the table is asked again
+   * instead.  With an incremental QueryStore only the entries whose
+   * answers are out of date are run again.
+   *
+   * @param revalidate true to ask every entry again
+   *
+   * @return the learner with the saved table
+   */
+  public SETLearner resume(boolean revalidate) throws IOException, SETException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file_)));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw (new IOException(file_ + " is not a checkpoint"));
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw (new IOException(file_ + " has version " + version + ", expected " + VERSION));
+      }
+      readAlphabet(in);
+
+      MemoizeTable memoized = MemoizeTable.read(in);
+      if (!revalidate) {
+        teacher_.setMemoizeTable(memoized);
+      }
+
+      SETLearner learner = new SETLearner(teacher_);
+      learner.readTable(in);
+      if (revalidate) {
+        learner.revalidate();
+      }
+      teacher_.println("Resumed from checkpoint " + file_);
+      return (learner);
+    } finally {
+      in.close();
+    }
+  }
+
+  private void writeAlphabet(DataOutputStream out) throws IOException {
+    Vector<String> alphabet = getAlphabet();
+    out.writeInt(alphabet.size());
+    for (String symbol : alphabet) {
+      out.writeUTF(symbol);
+    }
+  }
+
+  /**
+   * Checks that the checkpoint is for the teacher's alphabet.  The
+   * table refers to symbols by their position, so the order matters
+   * too.
+   */
+  private void readAlphabet(DataInputStream in) throws IOException {
+    Vector<String> alphabet = getAlphabet();
+    Vector<String> saved = new Vector<String>();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      saved.add(in.readUTF());
+    }
+
+    if (!saved.equals(alphabet)) {
+      throw (new IOException(file_ + " is for the alphabet " + saved
+          + ", not " + alphabet));
+    }
+  }
+
+  /**
+   * Gets the alphabet as the learner interns it
+   */
+  private Vector<String> getAlphabet() {
+    SymbolTable symbols = new SymbolTable(teacher_.getAlphabet());
+    Vector<String> alphabet = new Vector<String>(symbols.size());
+    for (int i = 0; i < symbols.size(); i++) {
+      alphabet.add(symbols.getSymbol(i));
+    }
+    return (alphabet);
+  }
+}
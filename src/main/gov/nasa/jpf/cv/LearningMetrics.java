@@ -0,0 +1,266 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+/**
+ * Counters, timers and gauges of a learning run, kept by name, which
+ * can be written as a JSON report:
+ *
+ *   { "final": true, "elapsed_ms": 1234,
+ *     "counters": { "cache.memo": 12, ... },
+ *     "timers": { "jpf.query": { "count": 3, "total_ms": 90, "max_ms": 40 }, ... },
+ *     "gauges": { "table.S": 7, ... } }
+ *
+ * Counters only grow, timers add up durations, and gauges hold the
+ * last value set.  The names are dotted, the first part telling what
+ * counts them:
+ *
+ *   cache.*        answers found by AbstractTeacher.lookup, or not
+ *   jpf.<kind>.*   JPF runs for queries and oracles, and their states
+ *   worker.*       requests to the QueryWorkerPool
+ *   oracle.*       conjectures, the counterexamples tests found, and the
+ *                  verdicts recalled for equivalent candidates
+ *   table.*        the size of the SET learner's table
+ *   dt.*           the size of the discrimination tree learner's hypothesis
+ *   memoize.*      the size of the teacher's MemoizeTable
+ *
+ * The metrics are shared by the whole process, and may be updated by
+ * queries that run concurrently.
+ */
+public class LearningMetrics {
+  private static TreeMap<String, long[]> counters_ = new TreeMap<String, long[]>();
+
+  /**
+   * count, total and max of each timer, in milliseconds
+   */
+  private static TreeMap<String, long[]> timers_ = new TreeMap<String, long[]>();
+
+  private static TreeMap<String, long[]> gauges_ = new TreeMap<String, long[]>();
+
+  private static long start_ = System.currentTimeMillis();
+
+  /**
+   * Writes snapshots while a run goes on, or null
+   */
+  private static Timer snapshots_ = null;
+
+  private LearningMetrics() {
+  }
+
+  /**
+   * Adds one to a counter
+   */
+  public static void count(String name) {
+    count(name, 1);
+  }
+
+  /**
+   * Adds to a counter
+   */
+  public static synchronized void count(String name, long amount) {
+    get(counters_, name, 1)[0] += amount;
+  }
+
+  /**
+   * Adds a duration to a timer
+   *
+   * @param name the timer
+   * @param millis the duration
+   */
+  public static synchronized void time(String name, long millis) {
+    long[] timer = get(timers_, name, 3);
+    timer[0]++;
+    timer[1] += millis;
+    timer[2] = Math.max(timer[2], millis);
+  }
+
+  /**
+   * Sets a gauge
+   */
+  public static synchronized void set(String name, long value) {
+    get(gauges_, name, 1)[0] = value;
+  }
+
+  /**
+   * Gets the value of a counter
+   *
+   * @return the value, 0 if it was never counted
+   */
+  public static synchronized long getCount(String name) {
+    long[] counter = counters_.get(name);
+    return ((counter == null) ? 0 : counter[0]);
+  }
+
+  /**
+   * Gets the value of a gauge
+   *
+   * @return the value, 0 if it was never set
+   */
+  public static synchronized long getGauge(String name) {
+    long[] gauge = gauges_.get(name);
+    return ((gauge == null) ? 0 : gauge[0]);
+  }
+
+  /**
+   * Forgets all the metrics, and starts the clock again
+   */
+  public static synchronized void reset() {
+    counters_.clear();
+    timers_.clear();
+    gauges_.clear();
+    start_ = System.currentTimeMillis();
+  }
+
+  private static long[] get(TreeMap<String, long[]> metrics, String name, int size) {
+    long[] metric = metrics.get(name);
+    if (metric == null) {
+      metric = new long[size];
+      metrics.put(name, metric);
+    }
+    return (metric);
+  }
+
+  /**
+   * Starts writing the report configured by conf, as a snapshot every
+   * assumption.metrics.interval seconds (default 60, 0 for none).  The
+   * report is assumption.metrics.report.
+   *
+   * @param conf the configuration
+   *
+   * @return the report file, or null if none is configured
+   */
+  public static File startReport(Config conf) {
+    String report = conf.getString("assumption.metrics.report");
+    if (report == null) {
+      return (null);
+    }
+
+    final File file = new File(report);
+    long interval = 1000L * conf.getInt("assumption.metrics.interval", 60);
+    if (interval > 0) {
+      snapshots_ = new Timer("metrics", true);
+      snapshots_.schedule(new TimerTask() {
+        public void run() {
+          write(file, false);
+        }
+      }, interval, interval);
+    }
+    return (file);
+  }
+
+  /**
+   * Stops the snapshots and writes the final report
+   *
+   * @param file the report file
+   */
+  public static void finishReport(File file) {
+    if (snapshots_ != null) {
+      snapshots_.cancel();
+      snapshots_ = null;
+    }
+    write(file, true);
+  }
+
+  /**
+   * Writes the report.  It is written to a temporary file first, which
+   * then replaces the old one, so a reader never sees half a report.
+   * Failing to write is reported, but doesn't stop the run.
+   *
+   * @param file the report file
+   * @param complete true if the run is over
+   */
+  public static void write(File file, boolean complete) {
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+      try {
+        out.write(toJSON(complete));
+      } finally {
+        out.close();
+      }
+
+      // renameTo doesn't replace an existing file everywhere
+      if (!temp.renameTo(file)) {
+        file.delete();
+        if (!temp.renameTo(file)) {
+          throw (new IOException("cannot rename " + temp + " to " + file));
+        }
+      }
+    } catch (IOException x) {
+      System.out.println("WARNING: could not write metrics " + file + ": " + x);
+      temp.delete();
+    }
+  }
+
+  /**
+   * Gets the report
+   *
+   * @param complete true if the run is over
+   *
+   * @return the metrics as JSON
+   */
+  public static synchronized String toJSON(boolean complete) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n  \"final\": ").append(complete);
+    json.append(",\n  \"elapsed_ms\": ").append(System.currentTimeMillis() - start_);
+
+    json.append(",\n  \"counters\": {");
+    appendValues(json, counters_);
+    json.append("},\n  \"timers\": {");
+    for (Iterator<Map.Entry<String, long[]>> timers = timers_.entrySet().iterator(); timers.hasNext();) {
+      Map.Entry<String, long[]> timer = timers.next();
+      long[] values = timer.getValue();
+      json.append("\n    ").append(quote(timer.getKey()));
+      json.append(": { \"count\": ").append(values[0]);
+      json.append(", \"total_ms\": ").append(values[1]);
+      json.append(", \"max_ms\": ").append(values[2]).append(" }");
+      if (timers.hasNext()) {
+        json.append(',');
+      }
+    }
+    json.append(timers_.isEmpty() ? "" : "\n  ");
+    json.append("},\n  \"gauges\": {");
+    appendValues(json, gauges_);
+    json.append("}\n}\n");
+    return (json.toString());
+  }
+
+  private static void appendValues(StringBuilder json, TreeMap<String, long[]> metrics) {
+    for (Iterator<Map.Entry<String, long[]>> entries = metrics.entrySet().iterator(); entries.hasNext();) {
+      Map.Entry<String, long[]> entry = entries.next();
+      json.append("\n    ").append(quote(entry.getKey()));
+      json.append(": ").append(entry.getValue()[0]);
+      if (entries.hasNext()) {
+        json.append(',');
+      }
+    }
+    json.append(metrics.isEmpty() ? "" : "\n  ");
+  }
+
+  private static String quote(String name) {
+    StringBuilder quoted = new StringBuilder(name.length() + 2);
+    quoted.append('"');
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if ((c == '"') || (c == '\\')) {
+        quoted.append('\\').append(c);
+      } else if (c < ' ') {
+        quoted.append(String.format("\\u%04x", Integer.valueOf(c)));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return (quoted.append('"').toString());
+  }
+}
@@ -1,13 +1,20 @@
 package gov.nasa.jpf.cv;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
 
 
 /**
  * Stores results that have already been computed so they can be 
- * retrieved later
+ * retrieved later.  The public methods are synchronized, so the
+ * table can be shared by queries that run concurrently.
  */
 public class MemoizeTable
 {
@@ -15,6 +22,10 @@ public class MemoizeTable
   // a sequence has a prefix that is known to violate, we can easily
   // detect that and say that the sequence will violate without doing
   // simulating the sequence on the LTS system.
+  //
+  // The other way round, a sequence that does not violate can have no
+  // prefix that violates, so storing a result that does not violate
+  // also marks every prefix that is still unknown as not violating.
 
   /**
    * The children of this node in the table
@@ -42,7 +53,7 @@ public class MemoizeTable
    * @param sequence the sequence
    * @param result the result
    */
-  public void setResult(AbstractList<String> sequence, boolean result)
+  public synchronized void setResult(AbstractList<String> sequence, boolean result)
   {
     this.setResult(sequence, result, 0);
   }
@@ -63,6 +74,13 @@ public class MemoizeTable
 	}
       else
 	{
+	  // A prefix of a sequence that does not violate doesn't violate
+	  // either
+	  if(!result && (isViolating_ == null))
+	    {
+	      isViolating_ = Boolean.FALSE;
+	    }
+
 	  // We need to go deeper
 	  String action = sequence.get(position);
 	  MemoizeTable child = (MemoizeTable)children_.get(action);
@@ -83,7 +101,7 @@ public class MemoizeTable
    *
    * @return the stored result, or null if the result has not been stored
    */ 
-  public Boolean getResult(AbstractList<String> sequence)
+  public synchronized Boolean getResult(AbstractList<String> sequence)
   {
     return(this.getResult(sequence, 0));
   }
@@ -119,4 +137,120 @@ public class MemoizeTable
 			}
 		}
 	}
+
+  /**
+   * Counts the nodes of the table
+   *
+   * @return the number of nodes, including this one
+   */
+  public synchronized int countNodes()
+  {
+    int nodes = 1;
+    for(Iterator children = children_.values().iterator(); children.hasNext();)
+      {
+	nodes += ((MemoizeTable)children.next()).countNodes();
+      }
+    return(nodes);
+  }
+
+  /**
+   * Estimates the memory the table holds, counting each node, its
+   * TreeMap and the map's entries.  The actions are shared with the
+   * queries, so they are not counted.
+   *
+   * @return the estimate in bytes
+   */
+  public synchronized long estimateBytes()
+  {
+    // node 24, TreeMap 48, an entry 40
+    long bytes = 24 + 48 + 40 * children_.size();
+    for(Iterator children = children_.values().iterator(); children.hasNext();)
+      {
+	bytes += ((MemoizeTable)children.next()).estimateBytes();
+      }
+    return(bytes);
+  }
+
+  /**
+   * Writes the table.  The actions are written once, in a dictionary,
+   * and the nodes in preorder refer to them by index.
+   *
+   * @param out where to write the table
+   */
+  public synchronized void write(DataOutput out) throws IOException
+  {
+    Vector<String> actions = new Vector<String>();
+    HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    this.collectActions(actions, ids);
+
+    out.writeInt(actions.size());
+    for(String action : actions)
+      {
+	out.writeUTF(action);
+      }
+
+    this.writeNode(out, ids);
+  }
+
+  /**
+   * Reads a table written by write
+   *
+   * @param in where to read the table from
+   *
+   * @return the table
+   */
+  public static MemoizeTable read(DataInput in) throws IOException
+  {
+    String[] actions = new String[in.readInt()];
+    for(int i = 0; i < actions.length; i++)
+      {
+	actions[i] = in.readUTF();
+      }
+
+    MemoizeTable table = new MemoizeTable();
+    table.readNode(in, actions);
+    return(table);
+  }
+
+  private void collectActions(Vector<String> actions, HashMap<String, Integer> ids)
+  {
+    for(Iterator entries = children_.entrySet().iterator(); entries.hasNext();)
+      {
+	Map.Entry entry = (Map.Entry)entries.next();
+	String action = (String)entry.getKey();
+	if(!ids.containsKey(action))
+	  {
+	    ids.put(action, new Integer(actions.size()));
+	    actions.add(action);
+	  }
+	((MemoizeTable)entry.getValue()).collectActions(actions, ids);
+      }
+  }
+
+  private void writeNode(DataOutput out, HashMap<String, Integer> ids) throws IOException
+  {
+    // 0 is unknown, 1 not violating, 2 violating
+    out.writeByte((isViolating_ == null) ? 0 : (isViolating_.booleanValue() ? 2 : 1));
+    out.writeInt(children_.size());
+    for(Iterator entries = children_.entrySet().iterator(); entries.hasNext();)
+      {
+	Map.Entry entry = (Map.Entry)entries.next();
+	out.writeInt(ids.get(entry.getKey()).intValue());
+	((MemoizeTable)entry.getValue()).writeNode(out, ids);
+      }
+  }
+
+  private void readNode(DataInput in, String[] actions) throws IOException
+  {
+    int result = in.readByte();
+    isViolating_ = (result == 0) ? null : new Boolean(result == 2);
+
+    int children = in.readInt();
+    for(int i = 0; i < children; i++)
+      {
+	MemoizeTable child = new MemoizeTable();
+	children_.put(actions[in.readInt()], child);
+	child.readNode(in, actions);
+      }
+  }
 }
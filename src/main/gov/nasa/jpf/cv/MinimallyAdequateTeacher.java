@@ -1,12 +1,15 @@
 package gov.nasa.jpf.cv;
 
 import java.util.AbstractList;
+import java.util.Collection;
 import java.util.Vector;
 import java.util.Iterator;
 
 public interface MinimallyAdequateTeacher
 {
   public boolean query(AbstractList<String> sequence) throws SETException;
+
+  public boolean[] queryBatch(Collection<AbstractList<String>> sequences) throws SETException;
   
   public Vector conjecture(Candidate candidate) throws SETException;
 
@@ -13,11 +13,9 @@ import gov.nasa.jpf.jvm.bytecode.*;
 /* learn the assumption A for component M to satisfy P */
 /* uses JPF */
 
-public class ModularTeacher implements MinimallyAdequateTeacher {
+public class ModularTeacher extends AbstractTeacher {
   private SETLearner set_;
 
-  private MemoizeTable memoized_;
-
   private Vector alphabet_;
 
   private SafetyListener property = null;
@@ -28,7 +26,6 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
       String module2) {
     alphabet_ = new Vector();
     alphabet_.addAll(alpha);
-    memoized_ = new MemoizeTable();
     module1_ = module1;
     module2_ = module2;
 
@@ -38,7 +35,7 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
 
   public boolean query(AbstractList<String> sequence) throws SETException {
 
-    Boolean recalled = memoized_.getResult(sequence);
+    Boolean recalled = lookup(sequence);
     if (recalled != null) {
       return (!recalled.booleanValue());
     } else {
@@ -48,17 +45,51 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
           sequence, alphabet_, "Query"));
 
       JPF jpf = createJPFInstance(assumption, property, module1_); // driver for M1
-      jpf.run();
+      ExecutedMethodsListener executed = null;
+      if (isTrackingMethods()) {
+        executed = new ExecutedMethodsListener();
+        jpf.addListener(executed);
+      }
+      runJPF(jpf, "query");
       boolean violating = jpf.foundErrors();
-      memoized_.setResult(sequence, violating);
+      record(sequence, violating, (executed == null) ? null : executed.getMethods());
       return (!violating);
     }
   }
 
+  public boolean[] queryBatch(Collection<AbstractList<String>> sequences)
+      throws SETException {
+    // Answer the shorter queries first, so that a violating prefix
+    // answers its extensions from the memoize table
+    Vector<AbstractList<String>> batch = new Vector<AbstractList<String>>(sequences);
+    int[] order = shortestFirst(batch);
+
+    boolean[] results = new boolean[batch.size()];
+    for (int i = 0; i < order.length; i++) {
+      results[order[i]] = query(batch.get(order[i]));
+    }
+    return (results);
+  }
+
   public Vector conjecture(Candidate candidate) throws SETException {
+    // The oracles get the minimal candidate, and only once per language
+    CanonicalCandidate canonical = this.canonicalize(candidate);
+    if (verdicts_.containsKey(canonical)) {
+      return (this.recallVerdict(canonical));
+    }
+    Vector toReturn = this.checkCandidate(canonical.getCandidate());
+    this.recordVerdict(canonical, toReturn);
+    return (toReturn);
+  }
 
+  private Vector checkCandidate(Candidate candidate) throws SETException {
     printCandidateAssumption(candidate);
-    Vector toReturn = this.checkOracle1(candidate);
+    countConjecture();
+    Vector toReturn = this.testConformance(candidate);
+    if (toReturn != null) {
+      return (toReturn);
+    }
+    toReturn = this.checkOracle1(candidate);
     if (toReturn != null || module2_ == null) {
       return (toReturn);
     } else {
@@ -78,18 +109,14 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
     SafetyListener assumption = new SafetyListener(new SafetyAutomaton(true,
         assume, alphabet_, "Assumption"));
     JPF jpf = createJPFInstance(assumption, property, module1_);
+    AlphabetTraceRecorder trace = new AlphabetTraceRecorder(alphabet_, false);
+    jpf.addListener(trace);
 
-    jpf.run();
+    runJPF(jpf, "oracle1");
     boolean violating = jpf.foundErrors();
     if (violating) {
-      Path cex;
-      if (property != null && ((cex = property.getCounterexample()) != null)) {
-        // nothing to do - cex was set to path from property listener violation
-      } else {
-        cex = jpf.getVM().getPath();
-      }
-
-      counterexample = convert(cex);
+      // the trace up to the violation, of the property or any other
+      counterexample = trace.getCounterexample();
     }
     return counterexample;
   }
@@ -108,20 +135,14 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
     SafetyListener assumptionProperty = new SafetyListener(new SafetyAutomaton(
         false, assume, alphabet_, "AssumptionProperty"));
     JPF jpf = createJPFInstance(null, assumptionProperty, module2_);
+    AlphabetTraceRecorder trace = new AlphabetTraceRecorder(alphabet_, false);
+    jpf.addListener(trace);
 
-    jpf.run();
+    runJPF(jpf, "oracle2");
     boolean violating = jpf.foundErrors();
 
     if (violating) {
-      Path cex;
-      if (property != null && ((cex = property.getCounterexample()) != null)) {
-        // nothing to do - cex was set to path from property listener
-        // violation
-      } else {
-        cex = jpf.getVM().getPath();
-      }
-
-      Vector counterexampleTrace = convert(cex);
+      Vector counterexampleTrace = trace.getCounterexample();
 
       if (query(counterexampleTrace))
         counterexample = counterexampleTrace;
@@ -165,39 +186,6 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
     return jpf;
   }
 
-  // # TO DO #
-  // move this method into some type of util package
-
-  // converts jpf path into a vector of "actions" from alphabet
-  private Vector convert(Path path_from_jpf) {//TBD
-    Vector path = new Vector();
-    int cex_length = path_from_jpf.size(); //size;
-    Transition t;
-    Step s;
-    for (int i = 0; i < cex_length; i++) {
-      t = path_from_jpf.get(i); // should check if t is null?
-      int transition_length = t.getStepCount();
-      for (int j = 0; j < transition_length; j++) {
-        s = t.getStep(j);
-        Instruction instr = s.getInstruction();
-        if (instr instanceof InvokeInstruction) {
-          InvokeInstruction md = (InvokeInstruction) instr;
-          String word = md.getInvokedMethod().getName();
-          //                System.out.println("Next action in path is : " + word);
-          // check if word corresponds to an action in the alphabet   
-          for (int k = 0; k < alphabet_.size(); k++) {
-            String action = (String) alphabet_.elementAt(k);
-            if (word.compareTo(action) == 0) {
-              path.add(action);
-              //                        System.out.println("Next action in path is : " + action);
-            }
-          }
-        }
-      }
-    }
-    return path;
-  }
-
   public void printCandidateAssumption(Candidate candidate) {
     System.out.println("Candidate assumption:");
     int nStates = candidate.numberOfStates();
@@ -211,6 +199,7 @@ public class ModularTeacher implements MinimallyAdequateTeacher {
   }
 
   public void dumpCandidateStateMachine(Candidate candidate, String file) {
+    candidate = this.canonicalize(candidate).getCandidate();
     PrintWriter pw = null;
     try {
       pw = new PrintWriter(file);
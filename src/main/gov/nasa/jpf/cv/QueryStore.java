@@ -0,0 +1,765 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps the answers to membership queries on disk, so that later runs
+ * of the same configuration don't run JPF for them again.
+ *
+ * The store belongs to a fingerprint, the SHA-1 of the class files on
+ * the JPF classpath, the alphabet and the configuration that affects
+ * the search.  A store with another fingerprint is for other code and
+ * is started over.
+ *
+ * An incremental store (assumption.store.incremental) survives changes
+ * to the code.  Its fingerprint leaves out the class files.  Instead,
+ * each answer lists the methods JPF executed for it, as dependencies,
+ * and an answer is dropped when one of them has changed since (see
+ * BytecodeDigests).  The other answers are still good.  The file is
+ *
+ *   magic, version, fingerprint
+ *   records, either
+ *     'A'  length, symbol ids, verdict (1 if violating),
+ *          count, dependency ids
+ *     'D'  id, digest, name length, name (UTF-8)
+ *
+ * and a dependency is written the first time an answer needs it, with
+ * the next id.  A dependency that changed gets a new record and id.
+ *
+ * Records are only ever appended.  A run that dies while appending
+ * leaves a partial record at the end, which is cut off when the store
+ * is opened again.  Lookups read the records through a memory mapped
+ * buffer, found by an index from the hash of each sequence to the
+ * offset of its record.  The file is mapped once, when the store is
+ * opened; the records appended after that are also kept in memory, and
+ * read from there.
+ *
+ * The file is assumption.store.file.  assumption.store.keys are the
+ * prefixes of the configuration keys in the fingerprint; by default
+ * target, target_args, listener, search., vm., cg., jvm., sc. and
+ * peer_packages.
+ */
+public class QueryStore {
+  private static final int MAGIC = 0x43565153; // "CVQS"
+
+  private static final int VERSION = 2;
+
+  private static final int FINGERPRINT_LENGTH = 20;
+
+  private static final int HEADER_LENGTH = 8 + FINGERPRINT_LENGTH;
+
+  private static final byte ANSWER = 'A';
+
+  private static final byte DEPENDENCY = 'D';
+
+  private static final String[] DEFAULT_KEYS = { "target", "target_args",
+      "listener", "search.", "vm.", "cg.", "jvm.", "sc.", "peer_packages" };
+
+  private final File file_;
+
+  private final SymbolTable symbols_;
+
+  private final MinimallyAdequateTeacher teacher_;
+
+  /**
+   * The digests of the current code, or null if the store is not
+   * incremental
+   */
+  private final BytecodeDigests digests_;
+
+  /**
+   * Maps each dependency whose digest is current to its id
+   */
+  private HashMap<String, Integer> dependencies_ = new HashMap<String, Integer>();
+
+  /**
+   * The id of the next dependency record
+   */
+  private int nextDependency_ = 0;
+
+  private RandomAccessFile raf_;
+
+  private FileChannel channel_;
+
+  /**
+   * The records, up to where the file was mapped last
+   */
+  private MappedByteBuffer mapped_;
+
+  /**
+   * The records appended since, which start where mapped_ ends
+   */
+  private ByteBuffer tail_ = ByteBuffer.allocate(4096);
+
+  /**
+   * The end of the last complete record
+   */
+  private long size_;
+
+  /**
+   * Maps the hash of a sequence to the offset of its record
+   */
+  private HashMap<Long, Integer> index_ = new HashMap<Long, Integer>();
+
+  /**
+   * Maps the hash of a proper prefix of a sequence that is not violating
+   * to the offset of its record, for the prefixes that have no record of
+   * their own yet
+   */
+  private HashMap<Long, Integer> prefixes_ = new HashMap<Long, Integer>();
+
+  /**
+   * The number of lookups answered from the file
+   */
+  private long hits_ = 0;
+
+  /**
+   * The number of records appended in this run
+   */
+  private long appended_ = 0;
+
+  /**
+   * The number of answers dropped because the code they depend on
+   * changed
+   */
+  private long outOfDate_ = 0;
+
+  /**
+   * Opens the store configured by conf
+   *
+   * @param conf the configuration
+   * @param teacher the teacher whose alphabet the records use
+   *
+   * @return the store, or null if none is configured or it cannot be
+   *         opened
+   */
+  public static QueryStore create(Config conf, MinimallyAdequateTeacher teacher) {
+    String file = conf.getString("assumption.store.file");
+    if (file == null) {
+      return (null);
+    }
+
+    SymbolTable symbols = new SymbolTable(teacher.getAlphabet());
+    boolean incremental = conf.getBoolean("assumption.store.incremental");
+    BytecodeDigests digests = null;
+    if (incremental) {
+      digests = new BytecodeDigests(conf.getStringArray("classpath"));
+    }
+
+    try {
+      byte[] fingerprint = fingerprint(conf, symbols, !incremental);
+      return (new QueryStore(new File(file), fingerprint, symbols, digests, teacher));
+    } catch (IOException x) {
+      teacher.println("WARNING: could not open query store " + file + ": " + x);
+      return (null);
+    }
+  }
+
+  /**
+   * Opens a store, and starts it over if it is for another fingerprint
+   *
+   * @param digests the digests of the current code for an incremental
+   *        store, or null
+   */
+  public QueryStore(File file, byte[] fingerprint, SymbolTable symbols,
+      BytecodeDigests digests, MinimallyAdequateTeacher teacher) throws IOException {
+    file_ = file;
+    symbols_ = symbols;
+    digests_ = digests;
+    teacher_ = teacher;
+
+    raf_ = new RandomAccessFile(file, "rw");
+    channel_ = raf_.getChannel();
+
+    if (this.hasHeader(fingerprint)) {
+      this.readIndex();
+    } else {
+      if (channel_.size() > 0) {
+        teacher_.println("Query store " + file_
+            + " is for other code or configuration, starting over");
+      }
+      channel_.truncate(0);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.put(fingerprint);
+      header.flip();
+      this.write(header, 0);
+      size_ = HEADER_LENGTH;
+      this.map();
+    }
+  }
+
+  private boolean hasHeader(byte[] fingerprint) throws IOException {
+    if (channel_.size() < HEADER_LENGTH) {
+      return (false);
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    while (header.hasRemaining()) {
+      if (channel_.read(header, header.position()) < 0) {
+        return (false);
+      }
+    }
+    header.flip();
+
+    byte[] saved = new byte[FINGERPRINT_LENGTH];
+    if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+      return (false);
+    }
+    header.get(saved);
+    return (Arrays.equals(saved, fingerprint));
+  }
+
+  /**
+   * Indexes the answers in the file, leaving out those that are out of
+   * date, and cuts off a partial record at its end
+   */
+  private void readIndex() throws IOException {
+    long length = channel_.size();
+    if (length > Integer.MAX_VALUE) {
+      throw (new IOException(file_ + " is too large"));
+    }
+    size_ = length;
+    this.map();
+
+    // the dependencies whose digest is current
+    BitSet current = new BitSet();
+
+    int offset = HEADER_LENGTH;
+    while (true) {
+      int end = this.getRecordEnd(offset);
+      if (end < 0) {
+        break;
+      }
+
+      if (mapped_.get(offset) == DEPENDENCY) {
+        byte[] bytes = new byte[mapped_.getInt(offset + 13)];
+        ByteBuffer name = mapped_.duplicate();
+        name.position(offset + 17);
+        name.get(bytes);
+        String dependency = new String(bytes, "UTF-8");
+
+        Long digest = (digests_ == null) ? null : digests_.getDigest(dependency);
+        if ((digest != null) && (digest.longValue() == mapped_.getLong(offset + 5))) {
+          current.set(nextDependency_);
+          dependencies_.put(dependency, new Integer(nextDependency_));
+        }
+        nextDependency_++;
+
+      } else {
+        int count = mapped_.getInt(offset + 1);
+        long hash = hashStart();
+        for (int i = 0; i < count; i++) {
+          hash = hashNext(hash, mapped_.getInt(offset + 5 + 4 * i));
+        }
+
+        boolean upToDate = true;
+        int dependencies = offset + 6 + 4 * count;
+        for (int i = 0; i < mapped_.getInt(dependencies); i++) {
+          if (!current.get(mapped_.getInt(dependencies + 4 + 4 * i))) {
+            upToDate = false;
+          }
+        }
+
+        if (upToDate) {
+          index_.put(new Long(hash), new Integer(offset));
+          if (mapped_.get(offset + 5 + 4 * count) == 0) {
+            this.indexPrefixes(offset, count);
+          }
+        } else {
+          outOfDate_++;
+        }
+      }
+      offset = end;
+    }
+
+    if (offset < length) {
+      teacher_.println("Query store " + file_ + ": dropped a partial record of "
+          + (length - offset) + " bytes");
+      channel_.truncate(offset);
+      size_ = offset;
+      this.map();
+    }
+
+    teacher_.println("Query store " + file_ + ": " + index_.size() + " answers"
+        + ((digests_ == null) ? "" : ", " + outOfDate_ + " out of date"));
+  }
+
+  /**
+   * Gets the end of the record at offset
+   *
+   * @return the end, or -1 if there is no complete, valid record there
+   */
+  private int getRecordEnd(int offset) {
+    if (offset + 5 > size_) {
+      return (-1);
+    }
+
+    if (mapped_.get(offset) == DEPENDENCY) {
+      if ((offset + 17 > size_) || (mapped_.getInt(offset + 1) != nextDependency_)) {
+        return (-1);
+      }
+      int length = mapped_.getInt(offset + 13);
+      if ((length < 0) || (offset + 17L + length > size_)) {
+        return (-1);
+      }
+      return (offset + 17 + length);
+    }
+
+    if (mapped_.get(offset) != ANSWER) {
+      return (-1);
+    }
+    int count = mapped_.getInt(offset + 1);
+    if ((count < 0) || (offset + 10 + 4L * count > size_)) {
+      return (-1);
+    }
+    for (int i = 0; i < count; i++) {
+      int id = mapped_.getInt(offset + 5 + 4 * i);
+      if ((id < 0) || (id >= symbols_.size())) {
+        return (-1);
+      }
+    }
+    byte verdict = mapped_.get(offset + 5 + 4 * count);
+    if ((verdict != 0) && (verdict != 1)) {
+      return (-1);
+    }
+
+    int dependencies = offset + 6 + 4 * count;
+    int dependencyCount = mapped_.getInt(dependencies);
+    if ((dependencyCount < 0) || (dependencies + 4 + 4L * dependencyCount > size_)) {
+      return (-1);
+    }
+    for (int i = 0; i < dependencyCount; i++) {
+      int id = mapped_.getInt(dependencies + 4 + 4 * i);
+      if ((id < 0) || (id >= nextDependency_)) {
+        return (-1);
+      }
+    }
+    return (dependencies + 4 + 4 * dependencyCount);
+  }
+
+  private void map() throws IOException {
+    mapped_ = channel_.map(FileChannel.MapMode.READ_ONLY, 0, size_);
+  }
+
+  /**
+   * Looks up the answer to a query.  As in the MemoizeTable, a
+   * sequence with a violating prefix is violating, and a prefix of a
+   * sequence that is not violating is not violating.
+   *
+   * @param sequence the query
+   *
+   * @return true if the sequence is violating, false if it is not, or
+   *         null if the store doesn't know
+   */
+  public synchronized Boolean getResult(AbstractList<String> sequence) {
+    int[] ids = this.getIds(sequence);
+    if (ids == null) {
+      return (null);
+    }
+
+    long hash = hashStart();
+    for (int length = 0; length <= ids.length; length++) {
+      if (length > 0) {
+        hash = hashNext(hash, ids[length - 1]);
+      }
+
+      int offset = this.find(hash, ids, length);
+      if (offset >= 0) {
+        boolean violating = (this.get(offset + 5 + 4 * length) == 1);
+        if (violating || (length == ids.length)) {
+          hits_++;
+          return (Boolean.valueOf(violating));
+        }
+      }
+    }
+
+    if (this.findExtension(hash, ids) >= 0) {
+      hits_++;
+      return (Boolean.FALSE);
+    }
+    return (null);
+  }
+
+  /**
+   * Appends the answer to a query.  Failing to write is reported once,
+   * and the run goes on without storing.  An incremental store only
+   * takes answers whose dependencies are known.
+   *
+   * @param sequence the query
+   * @param violating true if the sequence is violating
+   * @param executed the methods JPF executed for the query, or null if
+   *        they are not known
+   */
+  public synchronized void setResult(AbstractList<String> sequence,
+      boolean violating, Collection<String> executed) {
+    if ((channel_ == null) || ((digests_ != null) && (executed == null))) {
+      return;
+    }
+    int[] ids = this.getIds(sequence);
+    if (ids == null) {
+      return;
+    }
+
+    long hash = hashStart();
+    for (int i = 0; i < ids.length; i++) {
+      hash = hashNext(hash, ids[i]);
+    }
+    if (this.find(hash, ids, ids.length) >= 0) {
+      return;
+    }
+
+    try {
+      int[] dependencies = (digests_ == null) ? new int[0]
+          : this.getDependencies(executed);
+
+      ByteBuffer record = ByteBuffer.allocate(10 + 4 * ids.length + 4 * dependencies.length);
+      record.put(ANSWER);
+      record.putInt(ids.length);
+      for (int i = 0; i < ids.length; i++) {
+        record.putInt(ids[i]);
+      }
+      record.put((byte) (violating ? 1 : 0));
+      record.putInt(dependencies.length);
+      for (int i = 0; i < dependencies.length; i++) {
+        record.putInt(dependencies[i]);
+      }
+      record.flip();
+
+      int offset = this.append(record);
+      index_.put(new Long(hash), new Integer(offset));
+      if (!violating) {
+        this.indexPrefixes(offset, ids.length);
+      }
+      appended_++;
+    } catch (IOException x) {
+      teacher_.println("WARNING: could not write query store " + file_ + ": " + x);
+      this.close();
+    }
+  }
+
+  /**
+   * Gets the ids of the dependencies of an answer: the executed methods
+   * of tracked classes, and the declarations of those classes.
+   * Dependencies seen for the first time are written out.
+   */
+  private int[] getDependencies(Collection<String> executed) throws IOException {
+    TreeSet<String> names = new TreeSet<String>();
+    for (String method : executed) {
+      String className = BytecodeDigests.getClassName(method);
+      if (digests_.isTracked(className)) {
+        names.add(className);
+        names.add(method);
+      }
+    }
+
+    int count = 0;
+    int[] ids = new int[names.size()];
+    for (String name : names) {
+      Integer id = dependencies_.get(name);
+      if (id == null) {
+        // a method JPF made up has no code of its own
+        Long digest = digests_.getDigest(name);
+        if (digest == null) {
+          continue;
+        }
+
+        byte[] bytes = name.getBytes("UTF-8");
+        ByteBuffer record = ByteBuffer.allocate(17 + bytes.length);
+        record.put(DEPENDENCY);
+        record.putInt(nextDependency_);
+        record.putLong(digest.longValue());
+        record.putInt(bytes.length);
+        record.put(bytes);
+        record.flip();
+        this.append(record);
+
+        id = new Integer(nextDependency_++);
+        dependencies_.put(name, id);
+      }
+      ids[count++] = id.intValue();
+    }
+
+    int[] toReturn = new int[count];
+    System.arraycopy(ids, 0, toReturn, 0, count);
+    return (toReturn);
+  }
+
+  /**
+   * Appends a record
+   *
+   * @return the offset of the record
+   */
+  private int append(ByteBuffer record) throws IOException {
+    if (size_ + record.remaining() > Integer.MAX_VALUE) {
+      throw (new IOException(file_ + " is full"));
+    }
+    int offset = (int) size_;
+    this.write(record.duplicate(), size_);
+    if (tail_.remaining() < record.remaining()) {
+      ByteBuffer tail = ByteBuffer.allocate(Math.max(2 * tail_.capacity(),
+          tail_.position() + record.remaining()));
+      tail_.flip();
+      tail.put(tail_);
+      tail_ = tail;
+    }
+    tail_.put(record);
+    size_ += record.capacity();
+    return (offset);
+  }
+
+  /**
+   * Finds the record of a prefix of ids
+   *
+   * @return the offset of the record, or -1 if there is none
+   */
+  private int find(long hash, int[] ids, int length) {
+    Integer offset = index_.get(new Long(hash));
+    if (offset == null) {
+      return (-1);
+    }
+
+    // the hash may collide, so compare the sequences
+    int at = offset.intValue();
+    if (this.getInt(at + 1) != length) {
+      return (-1);
+    }
+    for (int i = 0; i < length; i++) {
+      if (this.getInt(at + 5 + 4 * i) != ids[i]) {
+        return (-1);
+      }
+    }
+    return (at);
+  }
+
+  /**
+   * Reads a byte of a record, from the mapped file or, if the record was
+   * appended since, from the tail
+   */
+  private byte get(int at) {
+    int limit = mapped_.limit();
+    return ((at < limit) ? mapped_.get(at) : tail_.get(at - limit));
+  }
+
+  private int getInt(int at) {
+    int limit = mapped_.limit();
+    return ((at < limit) ? mapped_.getInt(at) : tail_.getInt(at - limit));
+  }
+
+  /**
+   * Finds the record of a sequence that is not violating and that ids
+   * are a proper prefix of
+   *
+   * @return the offset of the record, or -1 if there is none
+   */
+  private int findExtension(long hash, int[] ids) {
+    Integer offset = prefixes_.get(new Long(hash));
+    if (offset == null) {
+      return (-1);
+    }
+
+    int at = offset.intValue();
+    if (this.getInt(at + 1) <= ids.length) {
+      return (-1);
+    }
+    for (int i = 0; i < ids.length; i++) {
+      if (this.getInt(at + 5 + 4 * i) != ids[i]) {
+        return (-1);
+      }
+    }
+    return (at);
+  }
+
+  /**
+   * Indexes the proper prefixes of the answer at offset, which is not
+   * violating.  A prefix that is indexed already, or whose hash is, is
+   * left alone; a collision only loses the inference.
+   */
+  private void indexPrefixes(int offset, int count) {
+    long hash = hashStart();
+    for (int i = 0; i < count; i++) {
+      Long key = new Long(hash);
+      if (!index_.containsKey(key) && !prefixes_.containsKey(key)) {
+        prefixes_.put(key, new Integer(offset));
+      }
+      hash = hashNext(hash, this.getInt(offset + 5 + 4 * i));
+    }
+  }
+
+  private void write(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel_.write(buffer, position);
+    }
+  }
+
+  /**
+   * Gets the ids of the symbols of a sequence
+   *
+   * @return the ids, or null if a symbol is not in the alphabet
+   */
+  private int[] getIds(AbstractList<String> sequence) {
+    int[] ids = new int[sequence.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = symbols_.getId(sequence.get(i));
+      if (ids[i] < 0) {
+        return (null);
+      }
+    }
+    return (ids);
+  }
+
+  private static long hashStart() {
+    return (0xcbf29ce484222325L);
+  }
+
+  private static long hashNext(long hash, int id) {
+    return ((hash ^ (id + 1)) * 0x100000001b3L);
+  }
+
+  /**
+   * Determines if the store keeps the dependencies of its answers
+   */
+  public boolean isIncremental() {
+    return (digests_ != null);
+  }
+
+  /**
+   * Stops writing.  The answers read so far can still be looked up.
+   */
+  public synchronized void close() {
+    if (channel_ == null) {
+      return;
+    }
+    try {
+      raf_.close();
+    } catch (IOException x) {
+      // nothing is lost, every record has been written
+    }
+    channel_ = null;
+  }
+
+  public String toString() {
+    return ("query store " + file_ + ": " + index_.size() + " answers, "
+        + hits_ + " hits, " + appended_ + " new"
+        + ((digests_ == null) ? "" : ", " + outOfDate_ + " out of date"));
+  }
+
+  /**
+   * Computes the fingerprint of the code and configuration: the class
+   * files and jars on the JPF classpath, the alphabet, and the values
+   * of the configuration keys the search depends on
+   *
+   * @param conf the configuration
+   * @param symbols the alphabet
+   * @param code false to leave out the class files, for an incremental
+   *        store
+   *
+   * @return the SHA-1 digest
+   */
+  static byte[] fingerprint(Config conf, SymbolTable symbols, boolean code)
+      throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException x) {
+      throw (new IOException("SHA-1 is not available"));
+    }
+
+    update(digest, code ? "code" : "incremental");
+    String[] classpath = conf.getStringArray("classpath");
+    if (code && (classpath != null)) {
+      for (int i = 0; i < classpath.length; i++) {
+        File entry = new File(classpath[i]);
+        if (entry.isDirectory()) {
+          TreeSet<String> classes = new TreeSet<String>();
+          listClasses(entry, "", classes);
+          for (String name : classes) {
+            update(digest, name);
+            update(digest, new File(entry, name));
+          }
+        } else if (entry.isFile()) {
+          update(digest, entry.getName());
+          update(digest, entry);
+        }
+      }
+    }
+
+    update(digest, "alphabet");
+    for (int i = 0; i < symbols.size(); i++) {
+      update(digest, symbols.getSymbol(i));
+    }
+
+    String[] prefixes = conf.getStringArray("assumption.store.keys");
+    if (prefixes == null) {
+      prefixes = DEFAULT_KEYS;
+    }
+    TreeSet<String> keys = new TreeSet<String>();
+    for (String key : conf.stringPropertyNames()) {
+      for (int i = 0; i < prefixes.length; i++) {
+        if (key.startsWith(prefixes[i])) {
+          keys.add(key);
+          break;
+        }
+      }
+    }
+    for (String key : keys) {
+      update(digest, key + "=" + conf.getProperty(key));
+    }
+
+    return (digest.digest());
+  }
+
+  /**
+   * Lists the class files under a directory, by their path relative
+   * to the classpath entry
+   */
+  private static void listClasses(File dir, String path, TreeSet<String> classes) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (int i = 0; i < files.length; i++) {
+      String name = path + files[i].getName();
+      if (files[i].isDirectory()) {
+        listClasses(files[i], name + "/", classes);
+      } else if (name.endsWith(".class")) {
+        classes.add(name);
+      }
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) throws IOException {
+    digest.update(s.getBytes("UTF-8"));
+    digest.update((byte) 0);
+  }
+
+  private static void update(MessageDigest digest, File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,634 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-lived child JVMs that answer membership queries and
+ * run oracle 1 for the parent's teacher.  Each worker is a JPF shell
+ * (gov.nasa.jpf.cv.tools.ScQueryWorker) started with the same
+ * arguments as the parent, so it loads jpf-core, jpf-cv and the
+ * system under test once and then runs one JPF search per request.
+ * Since every worker has its own JVM, jpf-core's static state is never
+ * shared between concurrent searches.
+ *
+ * Requests and replies are lines of tab separated fields on the
+ * worker's stdin and stdout:
+ *
+ *   QUERY  sym...                      OK  violating  method...
+ *   ORACLE1  states                    CEX  sym...
+ *     S  id  sym...     (one per state)  or NOCEX
+ *     T  from  to  sym  (one per transition)
+ *   END
+ *
+ * where the methods are those JPF executed for the query, if the
+ * store is incremental (see QueryStore), and a worker that fails a
+ * request answers ERROR and a message.  A
+ * worker announces it is up with READY.  Everything else the worker
+ * prints goes to its stderr, which is copied to the parent's.
+ *
+ * The pool starts with assumption.workers.min workers and grows up to
+ * assumption.workers while requests are waiting, but only if queries
+ * are expensive enough to be worth another JVM (on average at least
+ * assumption.workers.min_query_ms) and there is enough free physical
+ * memory for another assumption.workers.heap.  Workers above the
+ * minimum are retired again when queries get cheap or memory gets
+ * short.  A worker that takes longer than assumption.workers.timeout
+ * seconds, or dies, is killed, and the request is sent again to a new
+ * one, up to assumption.workers.retries times (default 2) before it
+ * fails.  A request the worker answers with ERROR is not sent again.
+ *
+ * The workers are started with jpf-core's RunJPF.jar, which is found
+ * through the jpf-core property.
+ */
+public class QueryWorkerPool {
+  public static final String READY = "READY";
+  public static final String QUERY = "QUERY";
+  public static final String ORACLE1 = "ORACLE1";
+  public static final String STATE = "S";
+  public static final String TRANSITION = "T";
+  public static final String END = "END";
+  public static final String OK = "OK";
+  public static final String CEX = "CEX";
+  public static final String NOCEX = "NOCEX";
+  public static final String ERROR = "ERROR";
+
+  /**
+   * Put in a worker's reply queue when its stdout is closed
+   */
+  private static final String EOF = new String("EOF");
+
+  /**
+   * The command line that starts a worker
+   */
+  private final Vector<String> command_;
+
+  private final int min_;
+
+  private final int max_;
+
+  /**
+   * The heap limit of a worker, in bytes
+   */
+  private final long heap_;
+
+  /**
+   * How long a request may take, in milliseconds, or 0 for no limit
+   */
+  private final long timeout_;
+
+  /**
+   * Queries that take less than this, in milliseconds, are not worth
+   * starting more workers for
+   */
+  private final long minQueryMillis_;
+
+  /**
+   * How many times a request is sent again after its worker was killed
+   */
+  private final int retries_;
+
+  /**
+   * The workers waiting for a request, most recently used first
+   */
+  private final LinkedList<Worker> idle_ = new LinkedList<Worker>();
+
+  /**
+   * All workers that are alive, so they can be killed on exit
+   */
+  private final HashSet<Worker> workers_ = new HashSet<Worker>();
+
+  /**
+   * The number of workers alive or being started
+   */
+  private int live_ = 0;
+
+  private int nextId_ = 1;
+
+  /**
+   * The moving average of the time a request takes, in milliseconds,
+   * or -1 before the first request
+   */
+  private double averageMillis_ = -1;
+
+  private boolean closed_ = false;
+
+  /**
+   * Creates a pool for the run configured by conf
+   *
+   * @param conf the configuration of the parent
+   * @param args the command line arguments of the parent, which are
+   * passed on to the workers
+   */
+  public QueryWorkerPool(Config conf, String[] args) {
+    max_ = Math.max(1, conf.getInt("assumption.workers", 1));
+    min_ = Math.max(1, Math.min(max_, conf.getInt("assumption.workers.min", 1)));
+    String heap = conf.getString("assumption.workers.heap", "1024m");
+    heap_ = parseSize(heap);
+    timeout_ = 1000L * conf.getInt("assumption.workers.timeout", 0);
+    minQueryMillis_ = conf.getInt("assumption.workers.min_query_ms", 250);
+    retries_ = Math.max(0, conf.getInt("assumption.workers.retries", 2));
+
+    String jpfCore = conf.getString("jpf-core");
+    if (jpfCore == null) {
+      throw (new IllegalArgumentException(
+          "jpf-core is not set, so the workers' RunJPF.jar cannot be found"));
+    }
+    String java = conf.getString("assumption.workers.java",
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    String runJPF = jpfCore + File.separator + "build" + File.separator + "RunJPF.jar";
+
+    command_ = new Vector<String>();
+    command_.add(java);
+    command_.add("-Xmx" + heap);
+    command_.add("-jar");
+    command_.add(runJPF);
+    // command line properties override the application properties, so
+    // the worker runs our shell and doesn't start workers of its own
+    command_.add("+shell=gov.nasa.jpf.cv.tools.ScQueryWorker");
+    command_.add("+assumption.workers=0");
+    command_.add("+assumption.query.threads=1");
+    for (int i = 0; i < args.length; i++) {
+      command_.add(args[i]);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      public void run() {
+        QueryWorkerPool.this.close();
+      }
+    });
+  }
+
+  /**
+   * Gets the largest number of workers
+   *
+   * @return the maximum size of the pool
+   */
+  public int getMaxWorkers() {
+    return (max_);
+  }
+
+  /**
+   * Runs a membership query on a worker
+   *
+   * @param sequence the query
+   * @param executed gets the methods JPF executed, unless it is null
+   *
+   * @return true if the query leads to a violation
+   */
+  public boolean query(AbstractList<String> sequence, Collection<String> executed)
+      throws SETException {
+    Vector<String> request = new Vector<String>(1);
+    request.add(QUERY + formatSequence(sequence));
+
+    long start = System.currentTimeMillis();
+    String[] reply = this.call(request);
+    LearningMetrics.time("worker.query", System.currentTimeMillis() - start);
+    if (!reply[0].equals(OK) || (reply.length < 2)) {
+      throw (new SETException("unexpected reply from worker: " + join(reply)));
+    }
+    if (executed != null) {
+      executed.addAll(Arrays.asList(reply).subList(2, reply.length));
+    }
+    return (Boolean.valueOf(reply[1]).booleanValue());
+  }
+
+  /**
+   * Checks a candidate assumption with oracle 1 on a worker
+   *
+   * @param candidate the candidate assumption
+   *
+   * @return the counterexample, or null if there is none
+   */
+  public Vector<String> checkOracle1(Candidate candidate) throws SETException {
+    long start = System.currentTimeMillis();
+    String[] reply = this.call(formatCandidate(candidate));
+    LearningMetrics.time("worker.oracle1", System.currentTimeMillis() - start);
+    if (reply[0].equals(NOCEX)) {
+      return (null);
+    } else if (reply[0].equals(CEX)) {
+      Vector<String> counterexample = new Vector<String>(reply.length - 1);
+      for (int i = 1; i < reply.length; i++) {
+        counterexample.add(reply[i]);
+      }
+      return (counterexample);
+    } else {
+      throw (new SETException("unexpected reply from worker: " + join(reply)));
+    }
+  }
+
+  /**
+   * Kills all workers.  Requests that are still running fail.
+   */
+  public void close() {
+    Vector<Worker> workers;
+    synchronized (this) {
+      closed_ = true;
+      workers = new Vector<Worker>(workers_);
+      notifyAll();
+    }
+
+    for (Worker worker : workers) {
+      worker.kill();
+    }
+  }
+
+  /**
+   * Sends a request to a worker and waits for the reply.  If the worker
+   * fails or times out, it is killed and the request is sent to another
+   * one, until the retries are used up.
+   *
+   * @param request the lines of the request
+   *
+   * @return the fields of the reply
+   */
+  private String[] call(Vector<String> request) throws SETException {
+    for (int attempt = 0; true; attempt++) {
+      Worker worker = this.acquire();
+      long start = System.currentTimeMillis();
+
+      String line;
+      String failure;
+      IOException cause = null;
+      try {
+        line = worker.call(request);
+        failure = "timed out after " + timeout_ + "ms";
+      } catch (IOException e) {
+        line = null;
+        failure = "failed: " + e.getMessage();
+        cause = e;
+      }
+
+      if (line != null) {
+        this.release(worker, System.currentTimeMillis() - start);
+        return (this.checkReply(worker, line));
+      }
+
+      this.discard(worker);
+      LearningMetrics.count("worker.killed");
+      if (attempt >= retries_) {
+        throw (new SETException("worker " + worker.id_ + " " + failure
+            + " and was killed, giving up after " + (attempt + 1) + " attempts", cause));
+      }
+      System.out.println("worker " + worker.id_ + " " + failure
+          + " and was killed, sending the request again");
+    }
+  }
+
+  private String[] checkReply(Worker worker, String line) throws SETException {
+    String[] reply = split(line);
+    if (reply[0].equals(ERROR)) {
+      throw (new SETException("worker " + worker.id_ + ": "
+          + ((reply.length > 1) ? reply[1] : "unknown error")));
+    }
+    return (reply);
+  }
+
+  /**
+   * Gets an idle worker, starting a new one if the pool may grow, or
+   * waiting for one otherwise
+   */
+  private Worker acquire() throws SETException {
+    int id;
+    synchronized (this) {
+      while (true) {
+        if (closed_) {
+          throw (new SETException("worker pool is closed"));
+        }
+
+        if (!idle_.isEmpty()) {
+          return (idle_.removeFirst());
+        }
+
+        if ((live_ < min_) || ((live_ < max_) && this.isWorthGrowing())) {
+          break;
+        }
+
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw (new SETException("interrupted while waiting for a worker", e));
+        }
+      }
+
+      live_++;
+      id = nextId_++;
+    }
+
+    // Start the worker outside the lock, the JVM takes a while to come up
+    try {
+      Worker worker = new Worker(id);
+      synchronized (this) {
+        workers_.add(worker);
+        if (closed_) {
+          this.remove(worker);
+          throw (new SETException("worker pool is closed"));
+        }
+      }
+      return (worker);
+    } catch (IOException e) {
+      synchronized (this) {
+        live_--;
+        notifyAll();
+      }
+      throw (new SETException("could not start worker " + id + ": " + e.getMessage(), e));
+    }
+  }
+
+  /**
+   * Returns a worker to the pool after a request, or retires it if the
+   * pool should shrink
+   */
+  private synchronized void release(Worker worker, long millis) {
+    averageMillis_ = (averageMillis_ < 0) ? millis : (0.8 * averageMillis_ + 0.2 * millis);
+
+    if (closed_ || ((live_ > min_) && !this.isWorthKeeping())) {
+      this.remove(worker);
+    } else {
+      idle_.addFirst(worker);
+    }
+    notifyAll();
+  }
+
+  /**
+   * Kills a worker that failed or timed out
+   */
+  private synchronized void discard(Worker worker) {
+    this.remove(worker);
+    notifyAll();
+  }
+
+  private void remove(Worker worker) {
+    worker.kill();
+    workers_.remove(worker);
+    live_--;
+  }
+
+  /**
+   * Determines if another worker pays off.  Until a request has been
+   * timed the pool stays at its minimum size.
+   */
+  private boolean isWorthGrowing() {
+    return ((averageMillis_ >= minQueryMillis_) && (getFreeMemory() >= heap_));
+  }
+
+  private boolean isWorthKeeping() {
+    return ((averageMillis_ >= minQueryMillis_) && (getFreeMemory() >= heap_ / 2));
+  }
+
+  /**
+   * Gets the free physical memory of the machine, if the platform
+   * tells us
+   */
+  private static long getFreeMemory() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return (((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize());
+    }
+    return (Long.MAX_VALUE);
+  }
+
+  private static long parseSize(String size) {
+    String s = size.trim().toLowerCase();
+    long unit = 1;
+    if (s.endsWith("k")) {
+      unit = 1024L;
+    } else if (s.endsWith("m")) {
+      unit = 1024L * 1024;
+    } else if (s.endsWith("g")) {
+      unit = 1024L * 1024 * 1024;
+    }
+    if (unit > 1) {
+      s = s.substring(0, s.length() - 1);
+    }
+    return (Long.parseLong(s) * unit);
+  }
+
+  //
+  //
+  // The protocol, shared with the workers
+  //
+  //
+
+  /**
+   * Formats the symbols of a sequence as fields, each preceded by a tab
+   */
+  public static String formatSequence(AbstractList<String> sequence) {
+    StringBuilder toReturn = new StringBuilder();
+    for (int i = 0; i < sequence.size(); i++) {
+      toReturn.append('\t').append(sequence.get(i));
+    }
+    return (toReturn.toString());
+  }
+
+  /**
+   * Formats a candidate as the lines of an ORACLE1 request
+   */
+  public static Vector<String> formatCandidate(Candidate candidate) {
+    Vector<String> lines = new Vector<String>();
+    int states = candidate.numberOfStates();
+    lines.add(ORACLE1 + "\t" + states);
+
+    // -1 is the error state, if there is one
+    for (int state = -1; state < states; state++) {
+      Vector S = candidate.getS(state);
+      if (S != null) {
+        lines.add(STATE + "\t" + state + formatSequence(S));
+      }
+    }
+
+    int[][] transitions = candidate.getTransitions();
+    SymbolTable symbols = candidate.getSymbols();
+    for (int state = 0; state < states; state++) {
+      for (int symbol = 0; symbol < symbols.size(); symbol++) {
+        if (transitions[state][symbol] != -1) {
+          lines.add(TRANSITION + "\t" + state + "\t" + transitions[state][symbol] + "\t"
+              + symbols.getSymbol(symbol));
+        }
+      }
+    }
+
+    lines.add(END);
+    return (lines);
+  }
+
+  /**
+   * Reads the rest of an ORACLE1 request
+   *
+   * @param header the fields of the first line of the request
+   * @param in where the rest of the request comes from
+   * @param symbols the alphabet of the candidate
+   *
+   * @return the candidate
+   */
+  public static Candidate parseCandidate(String[] header, BufferedReader in,
+      SymbolTable symbols) throws IOException {
+    int states = Integer.parseInt(header[1]);
+    TreeMap stateToS = new TreeMap();
+    Vector<String[]> transitions = new Vector<String[]>();
+
+    for (String line = in.readLine(); !END.equals(line); line = in.readLine()) {
+      if (line == null) {
+        throw (new IOException("end of input in the middle of a candidate"));
+      }
+
+      String[] fields = split(line);
+      if (fields[0].equals(STATE)) {
+        Vector<String> S = new Vector<String>();
+        for (int i = 2; i < fields.length; i++) {
+          S.add(fields[i]);
+        }
+        stateToS.put(new Integer(fields[1]), S);
+      } else if (fields[0].equals(TRANSITION)) {
+        transitions.add(fields);
+      } else {
+        throw (new IOException("unexpected line in candidate: " + line));
+      }
+    }
+
+    Candidate candidate = new Candidate(states, stateToS, symbols);
+    for (String[] fields : transitions) {
+      int symbol = symbols.getId(fields[3]);
+      if (symbol < 0) {
+        throw (new IOException("candidate has an action not in the alphabet: " + fields[3]));
+      }
+      candidate.setTransition(Integer.parseInt(fields[1]), symbol, Integer.parseInt(fields[2]));
+    }
+    return (candidate);
+  }
+
+  public static String[] split(String line) {
+    return (line.split("\t", -1));
+  }
+
+  public static String join(String[] fields) {
+    StringBuilder toReturn = new StringBuilder();
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        toReturn.append('\t');
+      }
+      toReturn.append(fields[i]);
+    }
+    return (toReturn.toString());
+  }
+
+  /**
+   * A child JVM and the threads reading its output
+   */
+  private class Worker {
+    final int id_;
+
+    private final Process process_;
+
+    private final PrintWriter in_;
+
+    /**
+     * The lines the worker wrote to its stdout
+     */
+    private final BlockingQueue<String> replies_ = new LinkedBlockingQueue<String>();
+
+    Worker(int id) throws IOException {
+      id_ = id;
+      process_ = new ProcessBuilder(command_).start();
+      in_ = new PrintWriter(new OutputStreamWriter(process_.getOutputStream(), "UTF-8"));
+
+      Thread reader = new Thread("cv-worker-" + id + "-out") {
+        public void run() {
+          try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(process_.getInputStream(), "UTF-8"));
+            for (String line = out.readLine(); line != null; line = out.readLine()) {
+              replies_.add(line);
+            }
+          } catch (IOException e) {
+            // the worker is gone, same as end of file
+          }
+          replies_.add(EOF);
+        }
+      };
+      reader.setDaemon(true);
+      reader.start();
+
+      Thread drainer = new Thread("cv-worker-" + id + "-err") {
+        public void run() {
+          copy(process_.getErrorStream());
+        }
+      };
+      drainer.setDaemon(true);
+      drainer.start();
+
+      // wait for the worker to come up, however long loading takes
+      String line = this.take(0);
+      if (!READY.equals(line)) {
+        this.kill();
+        throw (new IOException("worker " + id + " did not start: " + line));
+      }
+      System.out.println("started worker " + id);
+    }
+
+    /**
+     * Sends a request
+     *
+     * @return the reply, or null if the request timed out
+     */
+    String call(Vector<String> request) throws IOException {
+      for (String line : request) {
+        in_.println(line);
+      }
+      in_.flush();
+      if (in_.checkError()) {
+        throw (new IOException("cannot write to worker " + id_));
+      }
+
+      return (this.take(timeout_));
+    }
+
+    private String take(long timeout) throws IOException {
+      String line;
+      try {
+        line = (timeout > 0) ? replies_.poll(timeout, TimeUnit.MILLISECONDS) : replies_.take();
+      } catch (InterruptedException e) {
+        throw (new IOException("interrupted while waiting for worker " + id_));
+      }
+
+      if (line == EOF) {
+        replies_.add(EOF);
+        throw (new IOException("worker " + id_ + " exited"));
+      }
+      return (line);
+    }
+
+    private void copy(InputStream err) {
+      try {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(err));
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+          System.err.println("[worker " + id_ + "] " + line);
+        }
+      } catch (IOException e) {
+        // the worker is gone
+      }
+    }
+
+    void kill() {
+      process_.destroy();
+    }
+  }
+}
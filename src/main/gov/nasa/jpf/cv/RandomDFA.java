@@ -0,0 +1,207 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * A random deterministic automaton, for benchmarks and for learning
+ * without JPF (see DFATeacher).  Its language is prefix closed, like
+ * that of a safety assumption: a missing transition leads to the error
+ * state, and every other state accepts.  Every state is reachable from
+ * state 0 and has at least one transition.
+ */
+public class RandomDFA {
+  /**
+   * The share of transitions that lead to the error state, in percent
+   */
+  private static final int ERRORS = 20;
+
+  private final int[][] delta_;
+
+  private final Vector<String> alphabet_;
+
+  private final HashMap<String, Integer> ids_;
+
+  /**
+   * Generates an automaton
+   *
+   * @param states the number of states
+   * @param symbols the size of the alphabet
+   * @param seed the seed of the generator
+   */
+  public RandomDFA(int states, int symbols, long seed) {
+    Random random = new Random(seed);
+
+    alphabet_ = new Vector<String>(symbols);
+    ids_ = new HashMap<String, Integer>();
+    for (int a = 0; a < symbols; a++) {
+      alphabet_.add("a" + a);
+      ids_.put("a" + a, new Integer(a));
+    }
+
+    delta_ = new int[states][symbols];
+    for (int s = 0; s < states; s++) {
+      for (int a = 0; a < symbols; a++) {
+        delta_[s][a] = -2;
+      }
+    }
+
+    // A random spanning tree makes every state reachable.  free holds
+    // the unused transitions of the states reached so far.
+    Vector<Integer> free = new Vector<Integer>();
+    for (int a = 0; a < symbols; a++) {
+      free.add(new Integer(a));
+    }
+    for (int s = 1; s < states; s++) {
+      int slot = random.nextInt(free.size());
+      int transition = free.get(slot).intValue();
+      free.set(slot, free.get(free.size() - 1));
+      free.setSize(free.size() - 1);
+
+      delta_[transition / symbols][transition % symbols] = s;
+      for (int a = 0; a < symbols; a++) {
+        free.add(new Integer(s * symbols + a));
+      }
+    }
+
+    for (int s = 0; s < states; s++) {
+      boolean accepting = false;
+      for (int a = 0; a < symbols; a++) {
+        if (delta_[s][a] == -2) {
+          delta_[s][a] = (random.nextInt(100) < ERRORS) ? -1 : random.nextInt(states);
+        }
+        accepting |= (delta_[s][a] >= 0);
+      }
+      if (!accepting) {
+        delta_[s][random.nextInt(symbols)] = random.nextInt(states);
+      }
+    }
+  }
+
+  public int numberOfStates() {
+    return (delta_.length);
+  }
+
+  public Vector<String> getAlphabet() {
+    return (alphabet_);
+  }
+
+  /**
+   * Gets the state after a symbol
+   *
+   * @return the next state, or -1 for the error state
+   */
+  public int step(int state, int symbol) {
+    return ((state < 0) ? -1 : delta_[state][symbol]);
+  }
+
+  /**
+   * Determines if the automaton accepts a sequence
+   */
+  public boolean accepts(AbstractList<String> sequence) {
+    int state = 0;
+    for (int i = 0; (i < sequence.size()) && (state >= 0); i++) {
+      state = delta_[state][ids_.get(sequence.get(i)).intValue()];
+    }
+    return (state >= 0);
+  }
+
+  /**
+   * Gets a random sequence over the alphabet
+   */
+  public Vector<String> randomSequence(Random random, int length) {
+    Vector<String> sequence = new Vector<String>(length);
+    for (int i = 0; i < length; i++) {
+      sequence.add(alphabet_.get(random.nextInt(alphabet_.size())));
+    }
+    return (sequence);
+  }
+
+  /**
+   * Gets a shortest sequence reaching each state
+   */
+  public Vector<Vector<String>> getAccessSequences() {
+    Vector<Vector<String>> access = new Vector<Vector<String>>(delta_.length);
+    access.setSize(delta_.length);
+    access.set(0, new Vector<String>());
+
+    LinkedList<Integer> queue = new LinkedList<Integer>();
+    queue.add(new Integer(0));
+    while (!queue.isEmpty()) {
+      int state = queue.removeFirst().intValue();
+      for (int a = 0; a < alphabet_.size(); a++) {
+        int next = delta_[state][a];
+        if ((next >= 0) && (access.get(next) == null)) {
+          Vector<String> sequence = new Vector<String>(access.get(state));
+          sequence.add(alphabet_.get(a));
+          access.set(next, sequence);
+          queue.add(new Integer(next));
+        }
+      }
+    }
+    return (access);
+  }
+
+  /**
+   * Gets the automaton as a Candidate
+   */
+  public Candidate toCandidate() {
+    Vector<Vector<String>> access = this.getAccessSequences();
+    TreeMap<Integer, Vector<String>> map = new TreeMap<Integer, Vector<String>>();
+    for (int s = 0; s < delta_.length; s++) {
+      map.put(new Integer(s), access.get(s));
+    }
+
+    Candidate candidate = new Candidate(delta_.length, map, new SymbolTable(alphabet_.iterator()));
+    for (int s = 0; s < delta_.length; s++) {
+      for (int a = 0; a < alphabet_.size(); a++) {
+        if (delta_[s][a] >= 0) {
+          candidate.setTransition(s, a, delta_[s][a]);
+        }
+      }
+    }
+    return (candidate);
+  }
+
+  /**
+   * Gets the automaton as an FSM, with states S0, S1, ... and symbols
+   * a0, a1, ...  State S0 is the first, so it is the initial state.
+   */
+  public FSM toFSM() {
+    FSM fsm = new FSM();
+    for (int s = 0; s < delta_.length; s++) {
+      for (int a = 0; a < alphabet_.size(); a++) {
+        if (delta_[s][a] >= 0) {
+          fsm.setTransition("S" + s, alphabet_.get(a), "S" + delta_[s][a]);
+        }
+      }
+    }
+    return (fsm);
+  }
+
+  /**
+   * Gets the automaton in the notation TransitionsParser reads, e.g.
+   *
+   *   S0 = (a0 -> S1 | a1 -> S0),
+   *   S1 = (a1 -> S0).
+   */
+  public String toTransitions() {
+    StringBuilder text = new StringBuilder();
+    for (int s = 0; s < delta_.length; s++) {
+      text.append('S').append(s).append(" = (");
+      String separator = "";
+      for (int a = 0; a < alphabet_.size(); a++) {
+        if (delta_[s][a] >= 0) {
+          text.append(separator).append(alphabet_.get(a)).append(" -> S").append(delta_[s][a]);
+          separator = " | ";
+        }
+      }
+      text.append((s + 1 < delta_.length) ? "),\n" : ").\n");
+    }
+    return (text.toString());
+  }
+}
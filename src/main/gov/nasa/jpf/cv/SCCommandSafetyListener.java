@@ -73,12 +73,9 @@ public class SCCommandSafetyListener extends PropertyListenerAdapter {
 
 		if (propertyFile != null) {
 			getAssertions(propertyFile);
-			System.out.println("#DEBUG-COMMAND-LISTENER# Paths are  "
-					+ _path.toString());
-			System.out.println("#DEBUG-COMMAND-LISTENER# Commands are  "
-					+ _command.toString());
-			System.out.println("#DEBUG-COMMAND-LISTENER# Assertions are  "
-					+ _assertion.toString());
+			Trace.log(Trace.DEBUG, "#DEBUG-COMMAND-LISTENER# Paths are  ", _path);
+			Trace.log(Trace.DEBUG, "#DEBUG-COMMAND-LISTENER# Commands are  ", _command);
+			Trace.log(Trace.DEBUG, "#DEBUG-COMMAND-LISTENER# Assertions are  ", _assertion);
 		}
 
 	}
@@ -107,8 +104,7 @@ public class SCCommandSafetyListener extends PropertyListenerAdapter {
 			SCEvent scEve = generator.getNextChoice(); //this returns the next event to be executed
 			String methodName = scEve.getMethodName(); // name of the event 
 
-			System.out.println("#DEBUG-COMMAND-LISTENER# Command from script: "
-					+ methodName);
+			Trace.sample("#DEBUG-COMMAND-LISTENER# Command from script: ", methodName);
 
 			if (!methodName.equals("completion")) {
 				_trace.add(methodName);
@@ -124,9 +120,8 @@ public class SCCommandSafetyListener extends PropertyListenerAdapter {
 
 			if (assertion_number != -1) { // means that this command is of interest
 
-				System.out
-						.println("#DEBUG-COMMAND-LISTENER# Command from assertion file: "
-								+ _command.elementAt(assertion_number));
+				Trace.sample("#DEBUG-COMMAND-LISTENER# Command from assertion file: ",
+						_command.elementAt(assertion_number));
 
 				int NextActiveStateRef = _env.getReferenceField(_machineRef,
 						"activeStates");
@@ -137,23 +132,16 @@ public class SCCommandSafetyListener extends PropertyListenerAdapter {
 					// maps the state id to the string name for this state
 					// machine?
 
-					System.out
-							.println("#DEBUG-COMMAND-LISTENER# State name from listener: "
-									+ sName);
+					Trace.sample("#DEBUG-COMMAND-LISTENER# State name from listener: ", sName);
 
 					if (sName != null) {
-						System.out.println();
-
-						System.out.println("&&&&&&&&&&&&&&&&&&&&&&&&&&&&&& " + sName);
-						System.out.println("&&&&&&&&&&&&&&&&&&&&&&&&&&&&&& " + _assertion.elementAt(assertion_number));
-
-						System.out.println();
+						Trace.log(Trace.TRACE, "&&&&&&&&&&&&&&&&&&&&&&&&&&&&&& ", sName);
+						Trace.log(Trace.TRACE, "&&&&&&&&&&&&&&&&&&&&&&&&&&&&&& ", _assertion.elementAt(assertion_number));
 						
 						if (sName
 								.equals(_assertion.elementAt(assertion_number))) {
 							_result = false;
-							System.out
-							.println("#DEBUG-COMMAND-LISTENER# ERROR");
+							Trace.log(Trace.DEBUG, "#DEBUG-COMMAND-LISTENER# ERROR");
 							_failedCommand = methodName;
 							_failedAssertion = _originalAssertion
 									.elementAt(assertion_number);
@@ -27,7 +27,6 @@ import gov.nasa.jpf.jvm.DynamicArea;
 import gov.nasa.jpf.jvm.ElementInfo;
 import gov.nasa.jpf.jvm.JVM;
 import gov.nasa.jpf.jvm.MJIEnv;
-import gov.nasa.jpf.jvm.Path;
 import gov.nasa.jpf.jvm.ThreadInfo;
 import gov.nasa.jpf.jvm.bytecode.ATHROW;
 import gov.nasa.jpf.jvm.bytecode.Instruction;
@@ -44,34 +43,35 @@ import java.util.Vector;
 public class SCConformanceListener extends PropertyListenerAdapter {
 
 	SCSafetyAutomaton P = null;
-	static int currentConfigListener = 1;
     private static <T> Vector<T> newVector(T... things) {
         return new Vector<T>(Arrays.asList(things));
     }
     
 	public SCConformanceListener(SCSafetyAutomaton automaton) {
 		P = automaton;
-		System.out.println("Constructor invoked with  " + P);		
+		Trace.log(Trace.DEBUG, "Constructor invoked with  ", P);
 	}
 	
 	public SCConformanceListener(SCSafetyAutomaton automaton, Boolean oracle2) {
 		P = automaton;
-		System.out.println("Constructor invoked with  " + P);		
+		Trace.log(Trace.DEBUG, "Constructor invoked with  ", P);
 	}
 	
 	public SCConformanceListener(Config conf) {
 
+		// listeners configured for a run are numbered through its Config
+		int currentConfigListener = conf.getInt("safetyListener.next", 1);
 		boolean isAssumption = false;
 		String propertyFile = conf.getString("safetyListener"+ currentConfigListener + ".assumption");
 		if (propertyFile == null) 
 			propertyFile = conf.getString("safetyListener"+ currentConfigListener + ".property");
 		else isAssumption = true;	
-		System.out.println("#AG reasoning# Property file is  " + propertyFile);
+		Trace.log(Trace.DEBUG, "#AG reasoning# Property file is  ", propertyFile);
 		
     if (propertyFile != null) {
-      currentConfigListener++;
+      conf.setProperty("safetyListener.next", Integer.toString(currentConfigListener + 1));
       P = new SCSafetyAutomaton(isAssumption, propertyFile);
-      System.out.println("#AG reasoning# Automaton is  " + P);
+      Trace.log(Trace.DEBUG, "#AG reasoning# Automaton is  ", P);
     }
 	}
 	/*
@@ -140,9 +140,8 @@ public class SCConformanceListener extends PropertyListenerAdapter {
 		}
 	}
 	
-	public Path getCounterexample() {
-		if (P != null) return P.getCounterexample();
-		else return null;
+	public boolean isViolated() {
+		return (P != null) && P.isViolated();
 	}
 	
 	// ensure that this will work when search is different than DFS
@@ -164,10 +163,6 @@ public class SCConformanceListener extends PropertyListenerAdapter {
 		return (P.getErrorMessage());
 	}
 	
-	public Vector<String> convert(Path path) {
-		return (P.convert(path));		
-	}
-	
 	
 /**
 	public static void main(String[] args) {
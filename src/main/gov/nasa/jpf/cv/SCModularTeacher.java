@@ -24,7 +24,6 @@ import gov.nasa.jpf.JPF;
 import gov.nasa.jpf.PropertyListenerAdapter;
 import gov.nasa.jpf.jvm.ChoiceGenerator;
 import gov.nasa.jpf.jvm.ClassInfo;
-import gov.nasa.jpf.jvm.Path;
 import gov.nasa.jpf.util.Pair;
 
 import java.io.BufferedReader;
@@ -37,21 +36,28 @@ import java.io.PrintWriter;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /*
  * This teacher helps the learner learn the assumption A for
  * component M to satisfy P (P is specified as an assertion
  * violation in M)
  */
-public class SCModularTeacher implements MinimallyAdequateTeacher {
+public class SCModularTeacher extends AbstractTeacher {
 	private SETLearner set_;
 
-	private MemoizeTable memoized_;
-
 	private Vector alphabet_;
 
 	private SCSafetyListener property = null;
@@ -59,6 +65,24 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 	private String module1_, module2_;
 
 	private Config JPFargs_;
+
+	/**
+	 * Runs membership queries concurrently, or null if they are run one
+	 * at a time on the learner's thread
+	 */
+	private ExecutorService executor_;
+
+	/**
+	 * The queries being run.  A query asked again while it is running
+	 * waits for the running one instead of starting another JPF run.
+	 */
+	private ConcurrentHashMap<Vector<String>, Future<Boolean>> inFlight_;
+
+	/**
+	 * The child JVMs that run queries and oracle 1, or null if they run
+	 * in this JVM
+	 */
+	private QueryWorkerPool workers_;
 	
 	/*
 	 * utility method to create a list of elements to add to the alphabet
@@ -118,7 +142,6 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 		//symbolically
 		boolean refineAlpha = conf.getBoolean("assumption.alphabet.refine");
 		
-		memoized_ = new MemoizeTable();
 		String[] targetArgs = conf.getTargetArgs();
 		if (targetArgs.length < 1)
 			throw new RuntimeException("No target arguments configured");
@@ -126,6 +149,9 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 		module1_ = targetArgs[0]; // this is the statechart master state
 		module2_ = null;
 		JPFargs_ = conf;	
+
+		// queries run one at a time here, see SCModularTeacher(conf, args)
+		inFlight_ = new ConcurrentHashMap<Vector<String>, Future<Boolean>>();
 		String[] alpha = conf.getStringArray("assumption.alphabet");
 		alphabet_ = new Vector();
 		
@@ -198,29 +224,181 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 		}
 	}
 
+	/**
+	 * creates a teacher that runs its queries and oracle 1 on a pool of
+	 * child JVMs if assumption.workers is set.  args are the command line
+	 * the children are started with.  assumption.query.threads queries
+	 * are then sent to the workers at a time, and at least one per worker.
+	 * jpf-core keeps some of its VM state in statics, so without workers
+	 * the queries always run one at a time.
+	 */
+	public SCModularTeacher(Config conf, String[] args) {
+		this(conf);
+
+		int threads = conf.getInt("assumption.query.threads", 1);
+		if (conf.getInt("assumption.workers", 0) > 0) {
+			workers_ = new QueryWorkerPool(conf, args);
+			threads = Math.max(threads, workers_.getMaxWorkers());
+			if (threads > 1) {
+				startExecutor(threads);
+			}
+		} else if (threads > 1) {
+			System.out.println("assumption.query.threads=" + threads
+					+ " needs assumption.workers, JPF runs in one JVM can't run"
+					+ " concurrently; running queries one at a time");
+		}
+	}
+
+	private void startExecutor(int threads) {
+		executor_ = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "cv-query-" + (++count));
+				t.setDaemon(true); // don't keep the shell alive
+				return t;
+			}
+		});
+	}
+
 	public boolean query(AbstractList<String> sequence) throws SETException {
 
-		Boolean recalled = memoized_.getResult(sequence);
+		Boolean recalled = lookup(sequence);
 		if (recalled != null) {
 			return (!recalled.booleanValue());
 		} else {
-			// play the query as an assumption
-			System.out.println("\n New query: " + sequence);
-			
-			SCSafetyListener assumption = new SCSafetyListener(
-					new SCSafetyAutomaton(true, sequence, alphabet_, "Query", module1_));
-
-			JPF jpf = createJPFInstance(assumption, property, module1_); // driver for M1
-			jpf.run();
-			boolean violating = jpf.foundErrors();
-			memoized_.setResult(sequence, violating);
-			return (!violating);
+			return (!getViolating(submitQuery(sequence)));
+		}
+	}
+
+	public boolean[] queryBatch(Collection<AbstractList<String>> sequences)
+			throws SETException {
+		// Submit the shorter queries first, so that a violating prefix
+		// answers its extensions from the memoize table
+		Vector<AbstractList<String>> batch = new Vector<AbstractList<String>>(sequences);
+		int[] order = shortestFirst(batch);
+
+		boolean[] results = new boolean[batch.size()];
+		Vector<Future<Boolean>> running = new Vector<Future<Boolean>>();
+		running.setSize(batch.size());
+		for (int i = 0; i < order.length; i++) {
+			AbstractList<String> sequence = batch.get(order[i]);
+			Boolean recalled = lookup(sequence);
+			if (recalled != null) {
+				results[order[i]] = !recalled.booleanValue();
+			} else {
+				running.set(order[i], submitQuery(sequence));
+			}
+		}
+
+		for (int i = 0; i < results.length; i++) {
+			if (running.get(i) != null) {
+				results[i] = !getViolating(running.get(i));
+			}
 		}
+		return (results);
+	}
+
+	/*
+	 * starts a query on the executor, or runs it right away if there is
+	 * none.  If the same query is already running, returns that one.
+	 */
+	private Future<Boolean> submitQuery(AbstractList<String> sequence) {
+		final Vector<String> key = new Vector<String>(sequence);
+		Future<Boolean> running = inFlight_.get(key);
+		if (running != null) {
+			return running;
+		}
+
+		FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+			public Boolean call() throws SETException {
+				try {
+					// a shorter query may have answered this one by now
+					Boolean violating = lookup(key);
+					if (violating == null) {
+						HashSet<String> executed = isTrackingMethods() ? new HashSet<String>() : null;
+						violating = Boolean.valueOf(runQuery(key, executed));
+						record(key, violating.booleanValue(), executed);
+					}
+					return violating;
+				} finally {
+					inFlight_.remove(key);
+				}
+			}
+		});
+
+		running = inFlight_.putIfAbsent(key, task);
+		if (running != null) {
+			return running;
+		}
+
+		if (executor_ != null) {
+			executor_.execute(task);
+		} else {
+			task.run();
+		}
+		return task;
+	}
+
+	private boolean getViolating(Future<Boolean> query) throws SETException {
+		try {
+			return query.get().booleanValue();
+		} catch (InterruptedException e) {
+			throw new SETException("interrupted while waiting for a query", e);
+		} catch (ExecutionException e) {
+			throw new SETException("query failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/*
+	 * plays the query as an assumption in its own JPF run, on a worker if
+	 * there are any, without looking it up
+	 * adds the methods JPF executed to executed, unless it is null
+	 * returns true if the query leads to a violation
+	 */
+	public boolean runQuery(AbstractList<String> sequence, Collection<String> executed)
+			throws SETException {
+		if (workers_ != null) {
+			return workers_.query(sequence, executed);
+		}
+
+		System.out.println("\n New query: " + sequence);
+
+		SCSafetyListener assumption = new SCSafetyListener(
+				new SCSafetyAutomaton(true, sequence, alphabet_, "Query", module1_));
+
+		JPF jpf = createJPFInstance(assumption, property, module1_); // driver for M1
+		ExecutedMethodsListener tracker = null;
+		if (executed != null) {
+			tracker = new ExecutedMethodsListener();
+			jpf.addListener(tracker);
+		}
+		runJPF(jpf, "query");
+		if (tracker != null) {
+			executed.addAll(tracker.getMethods());
+		}
+		return jpf.foundErrors();
 	}
 
 	public Vector conjecture(Candidate candidate) throws SETException {
+		// The oracles get the minimal candidate, and only once per language
+		CanonicalCandidate canonical = this.canonicalize(candidate);
+		if (verdicts_.containsKey(canonical)) {
+			return (this.recallVerdict(canonical));
+		}
+		Vector toReturn = this.checkCandidate(canonical.getCandidate());
+		this.recordVerdict(canonical, toReturn);
+		return (toReturn);
+	}
+
+	private Vector checkCandidate(Candidate candidate) throws SETException {
 		printCandidateAssumption(candidate);
-		Vector toReturn = this.checkOracle1(candidate);
+		countConjecture();
+		Vector toReturn = this.testConformance(candidate);
+		if (toReturn != null) {
+			return (toReturn);
+		}
+		toReturn = this.checkOracle1(candidate);
 		if (toReturn != null) {
 			return (toReturn);
 		} else {
@@ -229,7 +407,12 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 	}
 
 	// M || A |= P
-	private Vector checkOracle1(Candidate assume) {
+	public Vector checkOracle1(Candidate assume) throws SETException {
+		if (workers_ != null) {
+			System.out.println("\n***************Oracle 1 is executing on a worker");
+			return workers_.checkOracle1(assume);
+		}
+
 		System.out.println("\n***************Oracle 1 is executing\n\nAssumption is: ");
 		printCandidateAssumption(assume);
 
@@ -240,15 +423,15 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 		SCSafetyListener assumption = new SCSafetyListener(
 				new SCSafetyAutomaton(true, assume, alphabet_, "Assumption",module1_));
 		JPF jpf = createJPFInstance(assumption, property, module1_);
+		AlphabetTraceRecorder trace = new AlphabetTraceRecorder(alphabet_, true);
+		jpf.addListener(trace);
 
-		jpf.run();
+		runJPF(jpf, "oracle1");
 		boolean violating = jpf.foundErrors();
 		if (violating) {
-			ChoiceGenerator cg = null;
 			assert (property==null) : "We should not be getting here";
 				// we do not cover the case where properties are specified separately
-			SCConverter conv = new SCConverter();
-			counterexample = conv.getCex(jpf.getVM(), alphabet_); 
+			counterexample = trace.getCounterexample();
 		}
 		return counterexample;
 	}
@@ -271,16 +454,15 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 			SCConformanceListener assumption = new SCConformanceListener(
 					new SCSafetyAutomaton(false, assume, alphabet_, "Assumption", CompleteModule , memoized_));
 			JPF jpf = createJPFInstance(assumption, property, CompleteModule);	
+			AlphabetTraceRecorder trace = new AlphabetTraceRecorder(alphabet_, true);
+			jpf.addListener(trace);
 //			System.out.println("Dimitra - debug - about to invoke JPF");
-			jpf.run();
+			runJPF(jpf, "oracle2");
 //			System.out.println("Dimitra - debug - JPF completed");
 			
-			Path jpfPath = assumption.getCounterexample();
-			if (jpfPath != null){
+			if (assumption.isViolated()){
 				//nonerror in M & error in Aerr - this is what we are looking for
-//				SCConverter scConvert = new SCConverter();
-//				counterexample = scConvert.getCex(jpf.getVM(), alphabet_);
-				counterexample = assumption.convert(jpfPath);
+				counterexample = trace.getCounterexample();
 				if( query(counterexample)){ //if not a violating counter example we are done
 					done = true; // a real counterexample to be returned to learner
 				} // otherwise you need to continue with your loop
@@ -294,10 +476,13 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 			PropertyListenerAdapter property, String targetClass) {
 
 
-		JPFargs_.setTargetArgs(targetClass); // keeps all other arguments as specified in .jpf file
+		// every run gets its own copy of the configuration, so that runs
+		// don't change each other's target or listener numbering
+		Config conf = (Config) JPFargs_.clone();
+		conf.setTargetArgs(targetClass); // keeps all other arguments as specified in .jpf file
 		
 		
-		JPF jpf = new JPF(JPFargs_);
+		JPF jpf = new JPF(conf);
 
 		if (assumption != null) {
 			jpf.addPropertyListener(assumption);
@@ -332,7 +517,7 @@ public class SCModularTeacher implements MinimallyAdequateTeacher {
 		PrintWriter pw = null;
 		try {
 			pw = new PrintWriter(file);
-			walkCandidateStateMachine(candidate,
+			walkCandidateStateMachine(this.canonicalize(candidate).getCandidate(),
 					new CandidateToStateMachine(pw));
 		} catch (IOException ex) {
 			ex.printStackTrace();
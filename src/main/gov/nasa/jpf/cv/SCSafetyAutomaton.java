@@ -22,14 +22,11 @@ package gov.nasa.jpf.cv;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Vector;
 
 import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPF;
 import gov.nasa.jpf.jvm.*;
-import gov.nasa.jpf.jvm.bytecode.Instruction;
-import gov.nasa.jpf.jvm.bytecode.InvokeInstruction;
 import gov.nasa.jpf.jvm.choice.sc.SCEvent;
 import gov.nasa.jpf.jvm.choice.sc.SCEventGenerator;
 import java.util.AbstractList;
@@ -52,22 +49,11 @@ public class SCSafetyAutomaton {
 	String module;
 	Candidate candidate;
 
-  // <2do> this should go away, it is only used to retrieve events that are in the alphabet
-  // for which we should use the SCEventGenerator CGs
-	Path counterexample;
-
 	private MemoizeTable memoized_;
 
-	// An FSM derived from a Candidate.
-	// Maps a transition name(String) to a state (Integer).
-	private class FSMState extends HashMap<String, Integer> {
-	};
-
-	FSMState[] automaton;
-
-	// a vector of states of the automaton
-	// each element is a hashmap (FMState) that stores transitions
-	// using as key the action name and value the destination state
+	// the transitions, compiled from a Candidate, an FSM or a query,
+	// over the symbols of alphabet_
+	CompiledMonitor automaton;
 
 	public SCSafetyAutomaton(boolean assumption, String fsmFile) {
 		TransitionsParser tp = new TransitionsParser(fsmFile);
@@ -89,7 +75,7 @@ public class SCSafetyAutomaton {
     alphabet_.addAll(alpha);
 
 		createAutomaton(transitions);
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 		this.module = module;
 	}
 
@@ -105,7 +91,7 @@ public class SCSafetyAutomaton {
 		this.module = module;
 		this.memoized_= memoized_;
 		createAutomaton();
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 	
 	public SCSafetyAutomaton(boolean assumption, Candidate candidate,
@@ -119,7 +105,7 @@ public class SCSafetyAutomaton {
 		this.candidate = candidate;
 		this.module = module;
 		createAutomaton();
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 	
 	public SCSafetyAutomaton(boolean assumption, FSM fsm, String nm) {
@@ -127,59 +113,30 @@ public class SCSafetyAutomaton {
 		automatonName = nm;
 		alphabet_ = fsm.getAlphabet();
 		createAutomaton(fsm);
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 
 	private void createAutomaton() {
-		int numStates = candidate.numberOfStates();
-		automaton = new FSMState[numStates];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			for (String action : alphabet_) {
-				int end = candidate.getTransition(i, action);
-				if (end != -1)
-					state.put(action, end);
-			}
-		}
+		automaton = CompiledMonitor.compile(candidate, alphabet_);
 	}
 
 	private void createAutomaton(FSM fsm) {
-		int numStates = fsm.numberOfStates();
-		automaton = new FSMState[numStates];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			for (String action : alphabet_) {
-				int end = fsm.getTransition(i, action);
-				if (end != -1)
-					state.put(action, end);
-			}
-		}
+		automaton = CompiledMonitor.compile(fsm, alphabet_);
 	}
 
 	// this one creates automata for queries expressed as a
 	// vector of transitions
 	private void createAutomaton(AbstractList<String> transitions) {
-		int numStates = transitions.size();
-		automaton = new FSMState[numStates + 1];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			state.put(transitions.get(i), i + 1);
-		}
-		automaton[numStates] = new FSMState();
+		automaton = CompiledMonitor.compile(transitions, alphabet_);
 	}
 
 	public void reset() {
 		currentState = 0;
 	}
 
-	public Path getCounterexample() {
-		return counterexample;
+	// the counterexample itself comes from an AlphabetTraceRecorder
+	public boolean isViolated() {
+		return !checkResult;
 	}
 
 	public void advance(String name) {
@@ -187,16 +144,12 @@ public class SCSafetyAutomaton {
 	}
 	
 	public boolean isInAlphabet(String name){
-		if (alphabet_.contains(name))
-			return true;
-		else 
-			return false;
+		return (automaton.symbolOf(name) != -1);
 	}
 	
 	public boolean isNextStateError(String name) {
-		if (alphabet_.contains(name)) 	
-				return( (automaton[currentState].get(name) == null) ? true : false);
-		else return false;
+		int symbol = automaton.symbolOf(name);
+		return (symbol != -1 && automaton.next(currentState, symbol) == -1);
 	}
 	
 	public boolean isAssumption() {
@@ -206,12 +159,13 @@ public class SCSafetyAutomaton {
 	public void advance(String name, ThreadInfo ti, JVM jvm, boolean conformance) {
 		// remember that you may need to force the thread to yield
 
-		//Thread.dumpStack();
+		// this runs for every event JPF dispatches, so up to a violation
+		// it must not log or allocate anything
 		int lastCurrentState = currentState;
+		int symbol = automaton.symbolOf(name);
 		
-		if (alphabet_.contains(name) && currentState != -1) {
-			Integer nextState = automaton[currentState].get(name);
-			currentState = (nextState == null) ? -1 : nextState;
+		if (symbol != -1 && currentState != -1) {
+			currentState = automaton.next(currentState, symbol);
 		}
 
 		if (currentState == -1) {
@@ -221,8 +175,7 @@ public class SCSafetyAutomaton {
 			} else {
 				//need to make sure the program really failed so
 				//check memoized table here with this counterexample
-				if (alphabet_.contains(name)){
-					counterexample = jvm.getPath(); // <2do> this should go away
+				if (symbol != -1){
 
 					if (conformance){
 						//get sequence of alphabet events so that we can check for spurious CE
@@ -239,7 +192,6 @@ public class SCSafetyAutomaton {
 						}else{ //this trace is in the teacher's memoized table
 
 							if (recalled.booleanValue() == true){ // means result of query would be false
-								counterexample = null;
 
                 // backtrack, but don't ignore this transition - we need to keep it
                 ti.breakTransition(true);
@@ -278,51 +230,13 @@ public class SCSafetyAutomaton {
     return list;
   }
 
-  /**
-   * <2do> replace calls by getAlphabetSequence
-   * @deprecated
-   */
-	public Vector<String> convert(Path path_from_jpf){
-		Vector<String> path = new Vector<String>();
-		int cex_length = path_from_jpf.size();
-		Transition t = null;
-        // [pcm] we don't have to start at transition 0, since we are not interested
-        // in system initialization (this might be too restrictive in case this
-        // automaton has to watch for class init calls)
-		
-		for (int i = 1; i < cex_length; i++) {
-			t = path_from_jpf.get(i); // should check if t is null?
-			int transition_length = t.getStepCount();
-
-			for (Step s:t) {
-				Instruction instr = s.getInstruction();
-				if (instr instanceof InvokeInstruction) {
-					InvokeInstruction md = (InvokeInstruction) instr;
-					String word = filter(md.getInvokedMethodName());
-
-          if (alphabet_.contains(word)){
-            path.add(word);
-          }
-				}
-			}
-		}
-
-		return path;
-	}
-
-	
-	public static String filter(String original) {
-		return(original.substring(0, original.indexOf('(')));
-	}
-
-	
 	
 	public void replay(Vector<String> trace) {
 		reset();
 		for (String step : trace) {
 			if (currentState != -1) {
-				Integer nextState = automaton[currentState].get(step);
-				currentState = (nextState == null) ? -1 : nextState;
+				int symbol = automaton.symbolOf(step);
+				currentState = (symbol == -1) ? -1 : automaton.next(currentState, symbol);
 			}
 		}
 	}
@@ -339,14 +253,7 @@ public class SCSafetyAutomaton {
 	public String toString() {
 		StringBuilder result = new StringBuilder();
 		result.append("[").append(getClass().getSimpleName()).append(" ")
-				.append(currentState).append(" ");
-		for (int i = 0; i < automaton.length; i++) {
-			FSMState state = automaton[i];
-			result.append("[").append(i).append(": ").append(state).append(
-					"]; ");
-		}
-		// Remove the last "; "
-		result.setLength(result.length() - 2);
+				.append(currentState).append(" ").append(automaton);
 		return result.append("]").toString();
 	}
 	
@@ -25,7 +25,6 @@ import gov.nasa.jpf.PropertyListenerAdapter;
 import gov.nasa.jpf.jvm.ChoiceGenerator;
 import gov.nasa.jpf.jvm.JVM;
 import gov.nasa.jpf.jvm.MJIEnv;
-import gov.nasa.jpf.jvm.Path;
 import gov.nasa.jpf.jvm.ThreadInfo;
 import gov.nasa.jpf.jvm.choice.sc.SCEvent;
 import gov.nasa.jpf.jvm.choice.sc.SCEventGenerator;
@@ -42,18 +41,21 @@ public class SCSafetyListener extends PropertyListenerAdapter {
   protected static JPFLogger log = JPF.getLogger("gov.nasa.jpf.cv");
 
 	SCSafetyAutomaton P = null;
-	static int currentConfigListener = 1;
 
 	public SCSafetyListener(SCSafetyAutomaton automaton) {
 		P = automaton;
 	}
 		
 	public SCSafetyListener(Config conf) {
-    P = createSCSafetyAutomaton(conf);
-    currentConfigListener++;
+    // the index of the next configured listener is kept in the Config of
+    // this run, so that concurrent runs with their own Configs don't
+    // interfere
+    int currentConfigListener = conf.getInt("safetyListener.next", 1);
+    P = createSCSafetyAutomaton(conf, currentConfigListener);
+    conf.setProperty("safetyListener.next", Integer.toString(currentConfigListener + 1));
 	}
 
-  SCSafetyAutomaton createSCSafetyAutomaton (Config conf){
+  SCSafetyAutomaton createSCSafetyAutomaton (Config conf, int currentConfigListener){
     String key = "safetyListener" + currentConfigListener;
 
     // <2do> what if there are both assumption and property keys?
@@ -77,9 +79,8 @@ public class SCSafetyListener extends PropertyListenerAdapter {
     }
   }
 
-	public Path getCounterexample() {
-		if (P != null) return P.getCounterexample();
-		else return null;
+	public boolean isViolated() {
+		return (P != null) && P.isViolated();
 	}
 
 		
@@ -137,8 +138,10 @@ public class SCSafetyListener extends PropertyListenerAdapter {
 	}
 
 	public void stateRestored(Search search) {
-    // restore the property state from the data in our masterstate
-	  ThreadInfo ti = ThreadInfo.getCurrentThread();
+    // restore the property state from the data in our masterstate. Use the
+    // thread of this search's VM, not the static current thread, which
+    // belongs to whichever run touched it last
+	  ThreadInfo ti = search.getVM().getLastThreadInfo();
     int propertyState = ti.getEnv().getStaticIntField("gov.nasa.jpf.cv.CVState", "AutomatonState");
 		P.setCurrentState(propertyState);
     log.info("property state restored to: ", propertyState);
@@ -11,4 +11,9 @@ public class SETException extends Exception
   {
     super(s);
   }
+
+  public SETException(String s, Throwable cause)
+  {
+    super(s, cause);
+  }
 }
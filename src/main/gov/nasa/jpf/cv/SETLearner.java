@@ -1,15 +1,21 @@
 package gov.nasa.jpf.cv;
 
-import java.math.BigInteger;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.Vector;
 
 /**
@@ -26,96 +32,180 @@ import java.util.Vector;
  * The number of calls to the oracle is less than n.  The number of
  * queries is bounded by O(|A|n^2 + n log m) where m is the length of
  * the longest counter-example returned by the oracle.
+ *
+ * Sequences in the table are IntSequences over the alphabet's
+ * SymbolTable, so S, E and T are keyed by identity rather than by
+ * comparing Strings, and the table shares prefixes between cells.
  */
 
-public class SETLearner {
+public class SETLearner implements AssumptionLearner {
   /**
    * The minimally adequate teacher
    */
   private MinimallyAdequateTeacher teacher_;
 
   /**
-   * The set S
+   * The set S, in the order elements were added
    */
-  private TreeSet S_;
+  private LinkedHashSet<IntSequence> S_;
 
   /**
    * The set E.  Maps between elements of E and the Integer index of
    * the element.  This is used to index into the BitSets stored in T.
+   * Iterates in index order.
    */
-  private TreeMap E_;
+  private LinkedHashMap<IntSequence, Integer> E_;
 
   /**
-   * The alphabet
+   * The alphabet, interned.  Symbol IDs are the elements of A.
    */
-  private Vector A_;
+  private SymbolTable symbols_;
 
   /**
-   * The table T.  This maps between sequences in (S union SA) stored
-   * as Vectors and rows stored as BitSet.  The length of each row is
-   * |E|.
+   * The table T.  This maps between sequences in (S union SA) and
+   * rows.  The length of each row is |E|.
    */
-  private TreeMap T_;
+  private HashMap<IntSequence, Row> T_;
 
   /**
-   * A Mapping between the Rows in T and the Columns headings for the
-   * row.  The keys are BitSets (stored in T) and a TreeSet of
-   * elements in (S union SA).
+   * The row signature index.  Maps the contents of each row of S to
+   * the element of S with that row.  Rows of S are pairwise distinct,
+   * so there is exactly one element per row.  The keys are copies of
+   * the rows in T, and the index is brought up to date whenever S or E
+   * grows.
    */
-  private HashMap TRowsToColumnMap_ = new HashMap();
+  private HashMap<Row, IntSequence> SRows_;
 
   /**
-   * Compares two sequences so they can be stored in
-   * TreeMaps/TreeSets.  This is lexicographic order, where elements
-   * in the same position are compared to each other.
+   * The worklist of elements of SA that have not been matched to a row
+   * of S yet.  Only these rows need to be looked at to close T.
    */
-  public static Comparator sequenceComparator = new Comparator() {
-    public int compare(Object a, Object b) {
-      Vector A = (Vector) a;
-      Vector B = (Vector) b;
+  private LinkedHashSet<IntSequence> unresolved_;
 
-      for (int i = 0; i < A.size(); i++) {
-        if (i >= B.size()) {
-          return (1);
-        }
+  /**
+   * The cells of T waiting to be filled in, keyed by the sequence that
+   * answers them.  Different cells can have the same sequence, so each
+   * sequence is only asked once per batch.
+   */
+  private LinkedHashMap<IntSequence, Vector<Cell>> pending_;
 
-        String elemA = (String) A.elementAt(i);
-        String elemB = (String) B.elementAt(i);
+  /**
+   * Finds the new elements of E in counterexamples
+   */
+  private CounterexampleAnalyzer analyzer_;
 
-        int compare = elemA.compareTo(elemB);
-        if (compare != 0) {
-          return (compare);
-        }
-      }
+  /**
+   * Shortens counterexamples before they are analyzed, or null
+   */
+  private CounterexampleMinimizer minimizer_;
 
-      // They are equal up to the point where A
-      // runs out of elements
-      if (A.size() < B.size()) {
-        return (-1);
-      } else {
-        return (0);
-      }
-    }
-  };
+  /**
+   * Where the table is saved between rounds, or null
+   */
+  private LearnerCheckpoint checkpoint_;
+
+  /**
+   * If true, the cells of SA are only filled in when they are needed
+   * to match a row to a row of S
+   */
+  private boolean lazy_ = false;
+
+  /**
+   * In a lazy table, a decision tree over the rows of S that rows of
+   * SA are matched by.  Rebuilt whenever S or E grows.
+   */
+  private Node tree_;
+
+  /**
+   * The number of counterexamples between prunings of E, or 0 to never
+   * prune
+   */
+  private int pruneInterval_ = 0;
+
+  /**
+   * The number of counterexamples seen so far
+   */
+  private int counterexamples_ = 0;
+
+  /**
+   * The number of counterexamples seen when E was last pruned
+   */
+  private int prunedAt_ = 0;
 
   public SETLearner(MinimallyAdequateTeacher teacher) throws SETException {
     teacher_ = teacher;
     teacher_.setSETLearner(this);
 
-    S_ = new TreeSet(sequenceComparator);
-    E_ = new TreeMap(sequenceComparator);
-    T_ = new TreeMap(sequenceComparator);
+    S_ = new LinkedHashSet<IntSequence>();
+    E_ = new LinkedHashMap<IntSequence, Integer>();
+    T_ = new HashMap<IntSequence, Row>();
+    SRows_ = new HashMap<Row, IntSequence>();
+    unresolved_ = new LinkedHashSet<IntSequence>();
+    pending_ = new LinkedHashMap<IntSequence, Vector<Cell>>();
+    analyzer_ = new CounterexampleAnalyzer.RivestSchapire();
 
-    // Copy the alphabet.  Skip the tau event, which should be in the
-    // first slot of composite's alphabet.
-    A_ = new Vector();
-    for (Iterator events = teacher_.getAlphabet(); events.hasNext();) {
-      A_.addElement((String) events.next());
-    }
+    // Intern the alphabet
+    symbols_ = new SymbolTable(teacher_.getAlphabet());
 
     // Add lambda to path S_ and E_
-    this.addToS(new Vector(0));
-    this.addToE(new Vector(0));
+    this.addToS(Collections.singletonList(symbols_.lambda()));
+    this.addToE(Collections.singletonList(symbols_.lambda()));
+  }
+
+  /**
+   * Sets the strategy used to analyze counterexamples.  The default is
+   * Rivest and Schapire's binary search.
+   *
+   * @param analyzer the strategy
+   */
+  public void setCounterexampleAnalyzer(CounterexampleAnalyzer analyzer) {
+    analyzer_ = analyzer;
+  }
+
+  /**
+   * Sets how counterexamples are shortened before they are analyzed.
+   * By default they are not.
+   *
+   * @param minimizer the minimizer, or null
+   */
+  public void setCounterexampleMinimizer(CounterexampleMinimizer minimizer) {
+    minimizer_ = minimizer;
+  }
+
+  /**
+   * Sets where the table is saved, whenever the checkpoint is due
+   *
+   * @param checkpoint the checkpoint
+   */
+  public void setCheckpoint(LearnerCheckpoint checkpoint) {
+    checkpoint_ = checkpoint;
+  }
+
+  /**
+   * Makes the table lazy, or eager.  In a lazy table the rows of S are
+   * complete, but a row of SA only gets the cells needed to sift it
+   * through a decision tree over the rows of S.  It is matched to the
+   * row of S it ends up at, if it agrees with that row on every cell
+   * it has.  A row that disagrees is a new state, and is filled in
+   * before it moves to S.  A wrong match shows up as a counterexample.
+   *
+   * @param lazy true for a lazy table
+   */
+  public void setLazy(boolean lazy) {
+    lazy_ = lazy;
+    this.indexRows();
+  }
+
+  /**
+   * Sets how often E is pruned.  Every interval counterexamples, once T
+   * is closed again, the suffixes that no longer tell any two rows of
+   * S apart are dropped.  A lazy table is not pruned, since it only
+   * fills in the columns it needs anyway.
+   *
+   * @param interval the number of counterexamples, or 0 to never prune
+   */
+  public void setPruneInterval(int interval) {
+    pruneInterval_ = interval;
   }
 
   //
@@ -134,28 +224,56 @@ public class SETLearner {
   }
 
   /**
-   * Adds a new element to S.  This fills in the table T.
+   * Adds new elements to S.  This fills in the table T, asking the
+   * teacher for all of the new entries in one batch.  The new elements
+   * must have pairwise distinct rows that are not already rows of S.
    *
-   * @param newS the element to add to S
+   * @param newSs the elements to add to S
    */
-  private void addToS(Vector newS) throws SETException {
-    teacher_.println("Adding to S: " + printSequence(newS));
+  private void addToS(Collection<IntSequence> newSs) throws SETException {
+    for (IntSequence newS : newSs) {
+      teacher_.println("Adding to S: " + newS);
+
+      // First add the new S to the set
+      S_.add(newS);
+
+      // Loop over A and E adding newS+E and newS+A+E to the table.  If
+      // newS was in SA its own row is already complete, unless the
+      // table is lazy.  A lazy table leaves the rows of newS+A empty.
+      Row row = T_.get(newS);
+      for (Map.Entry<IntSequence, Integer> EElem : E_.entrySet()) {
+        if ((row == null) || !row.isKnown(EElem.getValue().intValue())) {
+          this.putEntry(newS, -1, EElem.getKey());
+        }
+
+        for (int AElem = 0; (AElem < symbols_.size()) && !lazy_; AElem++) {
+          this.putEntry(newS, AElem, EElem.getKey());
+        }
+      }
+    }
 
-    // First add the new S to the set
-    S_.add(newS);
+    this.flushEntries();
 
-    // Loop over A and E adding newS+E and newS+A+E to the table
-    Iterator EElems = this.getE();
-    while (EElems.hasNext()) {
-      Vector EElem = (Vector) EElems.next();
-      this.putEntry(newS, null, EElem);
+    if (lazy_) {
+      // The tree changes, so every row of SA is sifted again
+      this.indexRows();
+      this.saveCheckpoint();
+      return;
+    }
 
-      Iterator AElems = this.getA();
-      while (AElems.hasNext()) {
-        String AElem = (String) AElems.next();
-        this.putEntry(newS, AElem, EElem);
+    // The new elements are now rows of S, and their extensions are
+    // new rows of SA that still need to be matched
+    for (IntSequence newS : newSs) {
+      unresolved_.remove(newS);
+      if (T_.containsKey(newS)) {
+        SRows_.put(new Row(T_.get(newS)), newS);
+      }
+      for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+        unresolved_.add(newS.append(AElem));
       }
     }
+
+    this.saveCheckpoint();
   }
 
   //
@@ -179,12 +297,11 @@ public class SETLearner {
    * @param EElem an element in E
    * @return the index
    */
-  private int getEIndex(Vector EElem) {
-    Integer val = (Integer) E_.get(EElem);
+  private int getEIndex(IntSequence EElem) {
+    Integer val = E_.get(EElem);
     if (val == null) {
       // This shouldn't happen if the algorithm is working correctly
-      teacher_.println("ERROR!  E: " + printSequence(EElem)
-          + " does not have an index.");
+      teacher_.println("ERROR!  E: " + EElem + " does not have an index.");
 
       return (-1);
     } else {
@@ -193,28 +310,309 @@ public class SETLearner {
   }
 
   /**
-   * Adds a new element to E.  This fills in T.
+   * Adds new elements to E.  This fills in T, asking the teacher for
+   * all of the new columns in one batch.
+   *
+   * @param newEs the elements to add, which must not be in E yet
+   */
+  private void addToE(Collection<IntSequence> newEs) throws SETException {
+    for (IntSequence newE : newEs) {
+      teacher_.println("Adding to E: " + newE);
+
+      int index = E_.size();
+      E_.put(newE, new Integer(index));
+
+      // Loop over S and A adding S+newE and S+A+newE to the table.  A
+      // lazy table only fills in S.
+      for (IntSequence SElem : S_) {
+        this.putEntry(SElem, -1, newE);
+
+        for (int AElem = 0; (AElem < symbols_.size()) && !lazy_; AElem++) {
+          this.putEntry(SElem, AElem, newE);
+        }
+      }
+    }
+
+    this.flushEntries();
+
+    // Every row has changed, so the index has to be rebuilt and every
+    // row of SA matched again
+    this.indexRows();
+
+    this.saveCheckpoint();
+  }
+
+  /**
+   * Sets the learning metrics that describe the table
+   */
+  private void updateMetrics() {
+    LearningMetrics.set("table.S", S_.size());
+    LearningMetrics.set("table.SA", T_.size() - S_.size());
+    LearningMetrics.set("table.E", E_.size());
+
+    // An estimate of the heap T takes, for a 64 bit JVM with compressed
+    // oops: 12 byte object headers, 16 byte array headers, 4 byte
+    // references, and objects padded to 8 bytes.  Each row has
+
+    // an entry in T: hash, key, value and next
+    final int entryBytes = 32;
+    // the last node of its IntSequence, with 8 fields, and the
+    // WeakReference its prefix keeps to it; the rest of the sequence is
+    // shared with other rows
+    final int sequenceBytes = 48 + 32;
+    // a Row: two BitSets and the hash
+    final int rowBytes = 24;
+    // and two BitSets, each with a long[] of a bit per element of E
+    final int bitSetBytes = 24 + 16;
+    long words = (E_.size() + 63) / 64;
+    LearningMetrics.set("table.bytes_estimate", T_.size()
+        * (entryBytes + sequenceBytes + rowBytes + 2 * (bitSetBytes + 8 * words)));
+  }
+
+  /**
+   * Drops the elements of E that are not needed to tell the rows of S
+   * apart, longest first, and renumbers the rest in their old order.
+   * Lambda is always kept, since it tells if a row accepts.  T must be
+   * closed: every row of SA then still matches the same row of S, so
+   * the candidate doesn't change, but rows added later cost fewer
+   * queries.
+   */
+  private void pruneE() {
+    IntSequence[] EElems = E_.keySet().toArray(new IntSequence[E_.size()]);
+    Integer[] order = new Integer[EElems.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = new Integer(i);
+    }
+    final IntSequence[] byIndex = EElems;
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer i1, Integer i2) {
+        return (byIndex[i2.intValue()].length() - byIndex[i1.intValue()].length());
+      }
+    });
+
+    BitSet kept = new BitSet();
+    kept.set(0, EElems.length);
+    for (int i = 0; i < order.length; i++) {
+      int EIndex = order[i].intValue();
+      if (EElems[EIndex].length() == 0) {
+        continue;
+      }
+
+      kept.clear(EIndex);
+      if (!this.areRowsOfSDistinct(kept)) {
+        kept.set(EIndex);
+      }
+    }
+
+    if (kept.cardinality() == EElems.length) {
+      return;
+    }
+    teacher_.println("Pruning E: keeping " + kept.cardinality() + " of "
+        + EElems.length + " elements");
+
+    // Renumber E, and move the kept entries of every row to their new
+    // index
+    E_.clear();
+    int[] newIndex = new int[EElems.length];
+    for (int EIndex = kept.nextSetBit(0); EIndex >= 0; EIndex = kept.nextSetBit(EIndex + 1)) {
+      newIndex[EIndex] = E_.size();
+      E_.put(EElems[EIndex], new Integer(E_.size()));
+    }
+
+    for (Map.Entry<IntSequence, Row> entry : T_.entrySet()) {
+      Row old = entry.getValue();
+      Row row = new Row();
+      for (int EIndex = kept.nextSetBit(0); EIndex >= 0; EIndex = kept.nextSetBit(EIndex + 1)) {
+        if (old.isKnown(EIndex)) {
+          row.set(newIndex[EIndex], old.get(EIndex));
+        }
+      }
+      entry.setValue(row);
+    }
+
+    this.indexRows();
+  }
+
+  /**
+   * Determines if the rows of S are still pairwise distinct when only
+   * some columns are looked at
    *
-   * @param newE the element to add
+   * @param columns the indices of the columns
+   */
+  private boolean areRowsOfSDistinct(BitSet columns) {
+    HashSet<BitSet> rows = new HashSet<BitSet>();
+    for (IntSequence SElem : S_) {
+      BitSet row = new BitSet();
+      for (int EIndex = columns.nextSetBit(0); EIndex >= 0; EIndex = columns.nextSetBit(EIndex + 1)) {
+        if (T_.get(SElem).get(EIndex)) {
+          row.set(EIndex);
+        }
+      }
+      if (!rows.add(row)) {
+        return (false);
+      }
+    }
+    return (true);
+  }
+
+  /**
+   * Saves the table if the checkpoint is due.  Called whenever a batch
+   * of entries has been filled in, when T is complete.
+   */
+  private void saveCheckpoint() {
+    if ((checkpoint_ != null) && checkpoint_.isDue()) {
+      checkpoint_.save(this);
+    }
+  }
+
+  /**
+   * Rebuilds the row signature index from T, and puts every element of
+   * SA back on the worklist.  A lazy table also gets a new decision
+   * tree.
    */
-  private void addToE(Vector newE) throws SETException {
-    teacher_.println("Adding to E: " + printSequence(newE));
+  private void indexRows() {
+    SRows_.clear();
+    unresolved_.clear();
+
+    Vector<IntSequence> rowsOfS = new Vector<IntSequence>(S_.size());
+    for (IntSequence SElem : S_) {
+      Row row = T_.get(SElem);
+      if (row != null) {
+        SRows_.put(new Row(row), SElem);
+        rowsOfS.add(SElem);
+      }
+    }
+
+    for (IntSequence SElem : S_) {
+      for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+        IntSequence SAElem = SElem.append(AElem);
+        unresolved_.add(SAElem);
+        if (lazy_ && !T_.containsKey(SAElem)) {
+          T_.put(SAElem, new Row());
+        }
+      }
+    }
+
+    tree_ = (lazy_ && !rowsOfS.isEmpty()) ? this.buildTree(rowsOfS) : null;
+  }
+
+  /**
+   * Builds a decision tree that tells the rows of S apart.  Each node
+   * splits on the oldest column that divides its rows, so that the
+   * tree changes little as S grows and rows of SA keep needing the
+   * cells they already have.
+   *
+   * @param SElems elements of S with pairwise distinct rows
+   *
+   * @return the root of the tree
+   */
+  private Node buildTree(Vector<IntSequence> SElems) {
+    if (SElems.size() == 1) {
+      return (new Node(SElems.get(0)));
+    }
+
+    int column = -1;
+    for (int EIndex = 0; EIndex < E_.size(); EIndex++) {
+      int accepting = 0;
+      for (IntSequence SElem : SElems) {
+        if (T_.get(SElem).get(EIndex)) {
+          accepting++;
+        }
+      }
+
+      if ((accepting > 0) && (accepting < SElems.size())) {
+        column = EIndex;
+        break;
+      }
+    }
+
+    if (column < 0) {
+      throw (new IllegalStateException("rows of S are not distinct: " + SElems));
+    }
+
+    Vector<IntSequence> rejecting = new Vector<IntSequence>();
+    Vector<IntSequence> accepting = new Vector<IntSequence>();
+    for (IntSequence SElem : SElems) {
+      (T_.get(SElem).get(column) ? accepting : rejecting).add(SElem);
+    }
+    return (new Node(column, this.buildTree(rejecting), this.buildTree(accepting)));
+  }
 
-    int index = E_.size();
-    E_.put(newE, new Integer(index));
+  /**
+   * Sifts a row through the decision tree as far as its cells allow
+   *
+   * @param row a row of SA
+   *
+   * @return the leaf the row ends up at, or the node whose column the
+   *         row doesn't have
+   */
+  private Node descend(Row row) {
+    Node node = tree_;
+    while (node.column_ >= 0) {
+      if (!row.isKnown(node.column_)) {
+        return (node);
+      }
+      node = row.get(node.column_) ? node.accepting_ : node.rejecting_;
+    }
+    return (node);
+  }
 
-    // Loop over S and A adding S+newE and S+A+newE to the table
-    Iterator SElems = this.getS();
-    while (SElems.hasNext()) {
-      Vector SElem = (Vector) SElems.next();
-      this.putEntry(SElem, null, newE);
+  /**
+   * Sifts the rows on the worklist of a lazy table, asking for the
+   * cells they need in batches, until each row either can be matched
+   * or disagrees with the row of S it ends up at.  Rows that disagree
+   * are new states, and get all of their cells.
+   */
+  private void siftUnresolved() throws SETException {
+    IntSequence[] EElems = E_.keySet().toArray(new IntSequence[E_.size()]);
+
+    boolean asked = true;
+    while (asked) {
+      asked = false;
+      for (IntSequence SAElem : unresolved_) {
+        Row row = T_.get(SAElem);
+        Node node = this.descend(row);
+        if (node.column_ >= 0) {
+          this.putEntry(SAElem, -1, EElems[node.column_]);
+          asked = true;
+        } else if (!row.agrees(T_.get(node.SElem_))) {
+          for (int EIndex = 0; EIndex < EElems.length; EIndex++) {
+            if (!row.isKnown(EIndex)) {
+              this.putEntry(SAElem, -1, EElems[EIndex]);
+              asked = true;
+            }
+          }
+        }
+      }
+      this.flushEntries();
+    }
+  }
 
-      Iterator AElems = this.getA();
-      while (AElems.hasNext()) {
-        String AElem = (String) AElems.next();
-        this.putEntry(SElem, AElem, newE);
+  /**
+   * Fills in cells of a lazy table that the matching so far didn't
+   * need
+   *
+   * @param columns elements of SA
+   * @param EElems elements of E
+   *
+   * @return false if there was nothing to fill in
+   */
+  private boolean fillCells(Collection<IntSequence> columns,
+      Collection<IntSequence> EElems) throws SETException {
+    for (IntSequence column : columns) {
+      for (IntSequence EElem : EElems) {
+        if (!T_.get(column).isKnown(getEIndex(EElem))) {
+          this.putEntry(column, -1, EElem);
+        }
       }
     }
+
+    if (pending_.isEmpty()) {
+      return (false);
+    }
+    this.flushEntries();
+    this.indexRows();
+    return (true);
   }
 
   //
@@ -229,7 +627,11 @@ public class SETLearner {
    * @return an Iterator over the elements of A
    */
   public Iterator getA() {
-    return (A_.iterator());
+    Vector<String> A = new Vector<String>(symbols_.size());
+    for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+      A.add(symbols_.getSymbol(AElem));
+    }
+    return (A.iterator());
   }
 
   //
@@ -239,168 +641,130 @@ public class SETLearner {
   //
 
   /**
-   * Adds a new entry to the table.  
+   * Adds a new entry to the table.  The entry is filled in by the next
+   * call to flushEntries.
    *
    * @param SElem the element in S
-   * @param AElem the element in A, or null
+   * @param AElem the element in A, or -1
    * @param EElem the element in E
-   *
-   * @return true if the sequence SAE is accepting, false otherwise
    */
-  private boolean putEntry(Vector SElem, String AElem, Vector EElem)
-      throws SETException {
+  private void putEntry(IntSequence SElem, int AElem, IntSequence EElem) {
     // First compute the column of the table we are in, as well as the
-    // sequence we will be testing
-    Vector column = new Vector();
-    Vector sequence = new Vector();
+    // sequence we will be testing.  Both are interned, so this only
+    // allocates the first time a sequence is seen.
+    IntSequence column = (AElem >= 0) ? SElem.append(AElem) : SElem;
+    IntSequence sequence = column.concat(EElem);
+
+    // Create the row if necessary
+    if (!T_.containsKey(column)) {
+      T_.put(column, new Row());
+    }
 
-    column.addAll(SElem);
+    Vector<Cell> cells = pending_.get(sequence);
+    if (cells == null) {
+      cells = new Vector<Cell>(1);
+      pending_.put(sequence, cells);
+    }
+    cells.add(new Cell(column, EElem));
+  }
 
-    sequence.addAll(SElem);
-    teacher_.print("S=" + printSequence(SElem));
+  /**
+   * Asks the teacher about all of the pending entries in one batch,
+   * and fills them in.  The caller brings the row signature index up
+   * to date once the whole batch is filled.
+   */
+  private void flushEntries() throws SETException {
+    if (pending_.isEmpty()) {
+      return;
+    }
 
-    if (AElem != null) {
-      column.add(AElem);
-      sequence.add(AElem);
-      teacher_.print("; A=" + AElem);
+    Vector<AbstractList<String>> queries = new Vector<AbstractList<String>>(pending_.size());
+    for (IntSequence sequence : pending_.keySet()) {
+      queries.add(sequence.toList());
     }
 
-    sequence.addAll(EElem);
-    teacher_.print("; E=" + printSequence(EElem));
+    // Determine which sequences are accepting
+    boolean[] accepts = teacher_.queryBatch(queries);
 
-    // Determine if the sequence is accepting
-    boolean accepts = teacher_.query(sequence);
-    teacher_.println(":  " + accepts);
+    int i = 0;
+    for (Vector<Cell> cells : pending_.values()) {
+      for (Cell cell : cells) {
+        if (Trace.isEnabled(Trace.DEBUG)) {
+          Trace.log(Trace.DEBUG, "S=", cell.column_, "; E=", cell.EElem_, ":  ", accepts[i]);
+        }
 
-    // Get the row in the table for the column
-    BitSet row = (BitSet) T_.get(column);
-    if (row == null) {
-      // Create the row if necessary
-      row = new BitSet();
-      T_.put(column, row);
-    } else {
-      // Remove the row from the reverse map
-      removeRowFromMap(column, row);
+        // Get the index for E and modify the row
+        T_.get(cell.column_).set(getEIndex(cell.EElem_), accepts[i]);
+      }
+      i++;
     }
 
-    // Get the index for E, modify the row, and add the row back into
-    // the reverse map
-    int EIndex = getEIndex(EElem);
-    row.set(EIndex, accepts);
-    addRowToMap(column, row);
-
-    return (accepts);
+    pending_.clear();
   }
 
   /**
    * Gets an entry to the table.  
    *
    * @param SElem the element in S
-   * @param AElem the element in A, or null
+   * @param AElem the element in A, or -1
    * @param EElem the element in E
    *
    * @return true if the sequence SAE is accepting, false otherwise
    */
-  private boolean getEntry(Vector SElem, String AElem, Vector EElem) {
+  private boolean getEntry(IntSequence SElem, int AElem, IntSequence EElem) {
     // First compute the column we are in
-    Vector column = new Vector();
-    column.addAll(SElem);
-
-    if (AElem != null) {
-      column.add(AElem);
-    }
+    IntSequence column = (AElem >= 0) ? SElem.append(AElem) : SElem;
 
     // Get the row, and get the index of E
-    BitSet row = (BitSet) T_.get(column);
+    Row row = T_.get(column);
     int EIndex = getEIndex(EElem);
 
     // Get the value from the row
     return (row.get(EIndex));
   }
 
-  /**
-   * Adds a column/row combination to the reverse map
-   *
-   * @param column the column (in S union SA)
-   * @param row the row
-   */
-  private void addRowToMap(Vector column, BitSet row) {
-    // Clone the row so it cannot be modified without our knowledge
-    BitSet myRow = (BitSet) row.clone();
-
-    // Get the column from the map, creating it if it doesn't already
-    // exist
-    TreeSet columns = (TreeSet) TRowsToColumnMap_.get(myRow);
-    if (columns == null) {
-      columns = new TreeSet(sequenceComparator);
-      TRowsToColumnMap_.put(myRow, columns);
-    }
-
-    // Add the column to the set of columns for the row
-    columns.add(column);
-  }
-
-  /**
-   * Removes a column/row combination from the reverse map
-   *
-   * @param column the column (in S union SA)
-   * @param row the row
-   */
-  private void removeRowFromMap(Vector column, BitSet row) {
-    // Get the columns corresponding to the row
-    TreeSet columns = (TreeSet) TRowsToColumnMap_.get(row);
-
-    // Remove the requested row
-    columns.remove(column);
-
-    // If columns is empty, remove the entry for the row from the
-    // HashMap
-    if (columns.size() == 0) {
-      TRowsToColumnMap_.remove(row);
-    }
-  }
-
-  /**
-   * For a row in T, gets the columns (in S union SA) that map to that row
-   *
-   * @param row the row in T
-   * @return an Iterator of the columns
-   */
-  private Iterator getColumnsForRow(BitSet row) {
-    return (((TreeSet) TRowsToColumnMap_.get(row)).iterator());
-  }
-
   /**
    * For a sequence in SA, gets the sequence in S that has the same
    * row
    *
    * @param SElem the element in S
-   * @param AElem the element in A (cannot be null)
+   * @param AElem the element in A (cannot be -1)
    *
    * @return the row in S that has the same entries is SAElem, null if
    * no such row exists
    */
-  public Vector getMatchingRow(Vector SElem, String AElem) {
+  public IntSequence getMatchingRow(IntSequence SElem, int AElem) {
     // Compute the column of the table we are in
-    Vector column = new Vector();
-    column.addAll(SElem);
-    column.add(AElem);
-
-    // Get the row for the element of SA
-    BitSet row = (BitSet) T_.get(column);
+    IntSequence column = SElem.append(AElem);
 
-    // Get the matching rows from the reverse map
-    Iterator columns = getColumnsForRow(row);
-    while (columns.hasNext()) {
-      Vector candidateColumn = (Vector) columns.next();
+    // Get the row for the element of SA, and look it up in the
+    // index of rows of S
+    return (this.getMatchingRow(column));
+  }
 
-      // If the candidate is in S_, return it
-      if (S_.contains(candidateColumn)) {
-        return (candidateColumn);
-      }
+  /**
+   * For a sequence in (S union SA), gets the sequence in S that has
+   * the same row
+   *
+   * @param column the element of (S union SA)
+   *
+   * @return the row in S that has the same entries, null if no such
+   * row exists
+   */
+  private IntSequence getMatchingRow(IntSequence column) {
+    Row row = T_.get(column);
+    if (row == null) {
+      return (null);
+    } else if (!lazy_ || row.isComplete(E_.size())) {
+      return (SRows_.get(row));
     }
 
-    return (null);
+    // Rows of a lazy table with missing cells are matched by the tree
+    Node node = this.descend(row);
+    if ((node.column_ >= 0) || !row.agrees(T_.get(node.SElem_))) {
+      return (null);
+    }
+    return (node.SElem_);
   }
 
   /**
@@ -410,8 +774,8 @@ public class SETLearner {
    *
    * @return true if the row is accepting, false otherwise
    */
-  public boolean isRowAccepting(Vector SElem) {
-    return (this.getEntry(SElem, null, new Vector(0)));
+  public boolean isRowAccepting(IntSequence SElem) {
+    return (this.getEntry(SElem, -1, symbols_.lambda()));
   }
 
   //
@@ -428,11 +792,18 @@ public class SETLearner {
    */
   public Object getAssumption() throws SETException {
     // Loop until we get don't get a counterexample
+    Vector counterExample = null;
     while (true) {
       // Make the table closed
  //     System.out.println("Dimitra-debug making table closed ");	
       this.makeTClosed();
 
+      if ((pruneInterval_ > 0) && !lazy_
+          && (counterexamples_ - prunedAt_ >= pruneInterval_)) {
+        prunedAt_ = counterexamples_;
+        this.pruneE();
+      }
+
       // Now that the table is closed, construct the transitions
       // from it
       Candidate candidate = this.getCandidate();
@@ -442,20 +813,34 @@ public class SETLearner {
         return (null);
       }
 
+      // A lazy table may not have learned all it could from the last
+      // counterexample, so try it again before the next conjecture
+      if (lazy_ && (counterExample != null)
+          && this.isCounterexample(candidate, counterExample)) {
+        this.updateT(candidate, counterExample);
+        continue;
+      }
+
       // Make the conjecture
-      Vector counterExample = teacher_.conjecture(candidate);
+      this.updateMetrics();
+      counterExample = teacher_.conjecture(candidate);
 
       // If we don't have a counter-example, our assumption was
       // correct.  If we have a counter-example, update T and
       // re-loop
       if (counterExample == null) {
         teacher_.println("T is correct.  Finished");
+        teacher_.println(analyzer_.toString());
+        if (minimizer_ != null) {
+          teacher_.println(minimizer_.toString());
+        }
         return (teacher_.getAssumption(candidate));
       } else {
         teacher_.println("T is incorrect.  Counterexample is:");
         for (Iterator actions = counterExample.iterator(); actions.hasNext();) {
           teacher_.println("\t" + (String) actions.next());
         }
+        counterexamples_++;
         this.updateT(candidate, counterExample);
 //        System.out.println("Dimitra-debug over updateT ");
       }
@@ -463,17 +848,16 @@ public class SETLearner {
   }
 
   private Candidate getCandidate() {
-    if (!this.isRowAccepting(new Vector(0))) {
+    if (!this.isRowAccepting(symbols_.lambda())) {
       return (null);
     }
 
     // First see how many states we need.  Any state of S that is not
     // accepting is going to be ignored
     TreeMap assumptionStateToS = new TreeMap();
-    TreeMap stateToID = new TreeMap(sequenceComparator);
+    HashMap<IntSequence, Integer> stateToID = new HashMap<IntSequence, Integer>();
     int nextID = 1;
-    for (Iterator SElems = this.getS(); SElems.hasNext();) {
-      Vector SElem = (Vector) SElems.next();
+    for (IntSequence SElem : S_) {
       if (!isRowAccepting(SElem)) {
         // This is the non-accepting state.  There should be only
         // one, and it should have an ID of -1.
@@ -481,33 +865,30 @@ public class SETLearner {
           throw (new RuntimeException("More than one" + " non-accepting state"));
         } else {
           stateToID.put(SElem, new Integer(-1));
-          assumptionStateToS.put(new Integer(-1), SElem);
+          assumptionStateToS.put(new Integer(-1), SElem.toList());
         }
-      } else if (SElem.size() == 0) {
+      } else if (SElem.length() == 0) {
         // This is lambda, assign it ID 0
         stateToID.put(SElem, new Integer(0));
-        assumptionStateToS.put(new Integer(0), SElem);
+        assumptionStateToS.put(new Integer(0), SElem.toList());
       } else {
         stateToID.put(SElem, new Integer(nextID));
-        assumptionStateToS.put(new Integer(nextID), SElem);
+        assumptionStateToS.put(new Integer(nextID), SElem.toList());
         nextID++;
       }
     }
 
-    Candidate candidate = new Candidate(nextID, assumptionStateToS);
+    Candidate candidate = new Candidate(nextID, assumptionStateToS, symbols_);
 
-    for (Iterator SElems = this.getS(); SElems.hasNext();) {
-      Vector SElem = (Vector) SElems.next();
-      int currentState = ((Integer) stateToID.get(SElem)).intValue();
+    for (IntSequence SElem : S_) {
+      int currentState = stateToID.get(SElem).intValue();
       if (currentState < 0) {
         continue;
       }
 
-      for (Iterator AElems = this.getA(); AElems.hasNext();) {
-        String AElem = (String) AElems.next();
-
-        Vector next = getMatchingRow(SElem, AElem);
-        int nextState = ((Integer) stateToID.get(next)).intValue();
+      for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+        IntSequence next = getMatchingRow(SElem, AElem);
+        int nextState = stateToID.get(next).intValue();
         if (nextState < 0) {
           continue;
         }
@@ -536,92 +917,122 @@ public class SETLearner {
     // where the candidate system and the actual system divide in
     // behavior.  
 
-    // Use binary search to locate the place in the counter-example
-    // where this occurs.  Our machine currently accepts the
-    // counterExample.  Based on the Rivest and Schapire notation, We
-    // want to find the smallest i such that alpha_i != alpha_(i+1).
+    // The analyzer locates the place in the counter-example where
+    // this occurs, and gives the suffixes that tell the states there
+    // apart.  By default this is Rivest and Schapire's binary search
+    // for an i such that alpha_i != alpha_(i+1).
+
+    IntSequence tauless = this.removeTaus(counterExample);
+
+    final Candidate hypothesis = candidate;
+    if (minimizer_ != null) {
+      CounterexampleMinimizer.Context minimizing = new CounterexampleMinimizer.Context() {
+        public int step(int state, int symbol) {
+          if (state == -1) {
+            return (-1);
+          }
+          return (hypothesis.getTransition(state, symbol));
+        }
 
-    // Eliminate taus from the counter example
-    Vector tauless = new Vector();
-    for (Iterator actions = counterExample.iterator(); actions.hasNext();) {
-      String action = (String) actions.next();
+        public boolean isAccepting(int state) {
+          return (state != -1);
+        }
 
-      if (!action.equals("tau")) {
-        tauless.addElement(action);
-//        System.out.println("Dimitra - debug: action added " + action);
-      }
+        public boolean query(IntSequence sequence) throws SETException {
+          return (teacher_.query(sequence.toList()));
+        }
+      };
+      tauless = minimizer_.minimize(minimizing, tauless);
     }
-    
-//    System.out.println("Dimitra - debug: Size of cex is " + tauless.size());
-    Boolean[] memoized = new Boolean[tauless.size() + 1];
 
-    // Compute the low point for reference
-    memoized[0] = new Boolean(getAlpha(candidate, tauless, 0));
+    CounterexampleAnalyzer.Context context = new CounterexampleAnalyzer.Context() {
+      public boolean getAlpha(IntSequence counterExample, int point)
+          throws SETException {
+        return (SETLearner.this.getAlpha(hypothesis, counterExample, point));
+      }
 
-    int i = binarySearch(candidate, tauless, memoized, 0, tauless.size());
+      public boolean hasRow(IntSequence sequence) {
+        return (T_.containsKey(sequence));
+      }
+    };
+
+    // Only add the suffixes that are new
+    Vector<IntSequence> suffixes = analyzer_.analyze(context, tauless);
+    LinkedHashSet<IntSequence> newEs = new LinkedHashSet<IntSequence>();
+    for (IntSequence suffix : suffixes) {
+      if (!E_.containsKey(suffix)) {
+        newEs.add(suffix);
+      }
+    }
 
-    // We want to add to E the sequence r_(i+1) where 
-    // counterExample = p_(i+1) r_(i+1) and |p_(i+1)| = i+1.
-    Vector P = new Vector();
-    Vector R = new Vector();
-    for (Iterator actions = tauless.iterator(); actions.hasNext();) {
-      String action = (String) actions.next();
-      if (P.size() < (i + 1)) {
-        P.addElement(action);
-      } else {
-        R.addElement(action);
+    // In a lazy table, a suffix already in E means a row of SA was
+    // matched on the cells it had, and differs in some column.  The
+    // row is one of the transitions the counterexample takes.  The
+    // column need not be among the suffixes: the analyzers that give a
+    // set of them leave out lambda, and don't say where the
+    // counterexample breaks, so then every column of those rows is
+    // filled in.
+    if (newEs.isEmpty() && lazy_) {
+      Vector<IntSequence> transitions = new Vector<IntSequence>(tauless.length());
+      IntSequence state = symbols_.lambda();
+      for (int i = 0; (i < tauless.length()) && (state != null); i++) {
+        IntSequence column = state.append(tauless.symbolAt(i));
+        transitions.add(column);
+        state = this.getMatchingRow(column);
+      }
+
+      if (this.fillCells(transitions, suffixes)
+          || this.fillCells(transitions, E_.keySet())) {
+        return;
       }
     }
 
-    this.addToE(R);
+    if (newEs.isEmpty()) {
+      throw (new SETException("counterexample " + tauless
+          + " does not give a new element of E"));
+    }
+
+    this.addToE(newEs);
   }
 
   /**
-   * Runs binary search to determine where in the counter example,
-   * alpha_i and alpha_(i+1) have different values.
+   * Eliminates taus (and anything else outside the alphabet) from a
+   * counterexample
+   *
+   * @param counterExample the counterexample, as Strings
    *
-   * @param candidate the andidate machine
-   * @param counterExample the counterExample being examined
-   * @param memoized the array of already computed results
-   * @param low the lower bound for binary search
-   * @param high the upper bound for binary search
-   * 
-   * @return the i such that alpha_i and alpha_(i+1) have different values.
+   * @return the counterexample without taus
    */
-  private int binarySearch(Candidate candidate, Vector counterExample,
-      Boolean[] memoized, int low, int high) throws SETException {
-    int testPoint1 = (low + high) / 2;
-    int testPoint2 = testPoint1 + 1;
-
-    boolean alpha1, alpha2;
+  private IntSequence removeTaus(Vector counterExample) {
+    IntSequence tauless = symbols_.lambda();
+    for (Iterator actions = counterExample.iterator(); actions.hasNext();) {
+      int action = symbols_.getId((String) actions.next());
 
-    if (memoized[testPoint1] != null) {
-      alpha1 = memoized[testPoint1].booleanValue();
-    } else {
-      alpha1 = getAlpha(candidate, counterExample, testPoint1);
-      memoized[testPoint1] = new Boolean(alpha1);
+      if (action >= 0) {
+        tauless = tauless.append(action);
+      }
     }
+    return (tauless);
+  }
 
-    if (memoized[testPoint2] != null) {
-      alpha2 = memoized[testPoint2].booleanValue();
-    } else {
-      alpha2 = getAlpha(candidate, counterExample, testPoint2);
-      memoized[testPoint2] = new Boolean(alpha2);
-    }
+  /**
+   * Determines if a counterexample still disagrees with a candidate
+   *
+   * @param candidate the candidate machine
+   * @param counterExample the counterexample
+   *
+   * @return true if the candidate and the teacher disagree about it
+   */
+  private boolean isCounterexample(Candidate candidate, Vector counterExample)
+      throws SETException {
+    IntSequence tauless = this.removeTaus(counterExample);
 
-    if (alpha1 != alpha2) {
-      return (testPoint1);
-    } else if (alpha1 == memoized[0].booleanValue()) {
-      // testPoint1 == testPoint2 == the low point, we need to look
-      // higher
-      return (binarySearch(candidate, counterExample, memoized, testPoint1 + 1,
-          high));
-    } else {
-      // testPoint1 == testPoint2 == the high point, we need to look
-      // lower
-      return (binarySearch(candidate, counterExample, memoized, low,
-          testPoint1 - 1));
+    int currentState = 0;
+    for (int i = 0; (i < tauless.length()) && (currentState != -1); i++) {
+      currentState = candidate.getTransition(currentState, tauless.symbolAt(i));
     }
+
+    return ((currentState != -1) != teacher_.query(tauless.toList()));
   }
 
   /**
@@ -634,8 +1045,8 @@ public class SETLearner {
    *
    * @return the value alpha_i
    */
-  private boolean getAlpha(Candidate candidate, Vector counterExample, int point)
-      throws SETException {
+  private boolean getAlpha(Candidate candidate, IntSequence counterExample,
+      int point) throws SETException {
     // To compute alpha_i: 
     //
     // 1) Let the counter-example be = p_i r_i where |p_i| = i.  Run
@@ -648,26 +1059,15 @@ public class SETLearner {
     // candidate machine into the same state.  Run the actual machine
     // on s r_i.  The result is alpha_i.
 
-    // First compute p_i and r_i
-    Vector P = new Vector();
-    Vector R = new Vector();
-    Iterator actions = counterExample.iterator();
-    while (actions.hasNext()) {
-      String action = (String) actions.next();
-      if (P.size() < point) {
-        P.addElement(action);
-      } else {
-        R.addElement(action);
-      }
-    }
+    // First compute r_i; p_i is the first point symbols
+    int[] actions = counterExample.toArray();
+    IntSequence R = counterExample.suffix(point);
 
     // Now run the candidate machine on P.  This is known to be a
     // deterministic finite state automata.
     int currentState = 0;
-    Iterator PActions = P.iterator();
-    while (PActions.hasNext()) {
-      String actionName = (String) PActions.next();
-      currentState = candidate.getTransition(currentState, actionName);
+    for (int i = 0; i < point; i++) {
+      currentState = candidate.getTransition(currentState, actions[i]);
 
       if (currentState == -1) {
         // We have gone into the error state.
@@ -679,22 +1079,23 @@ public class SETLearner {
     // P.  Look into assumptionStateToS_ to get the homing sequence
     // for this state.  Construct the sequence homing + R and run the
     // actual machine on this sequence.
-    Vector sequence = new Vector();
-    sequence.addAll(candidate.getS(currentState));
-    sequence.addAll(R);
+    IntSequence sequence = symbols_.intern(candidate.getS(currentState)).concat(R);
 
-    return (teacher_.query(sequence));
+    return (teacher_.query(sequence.toList()));
   }
 
   /**
    * Makes T is closed. T is closed if forall s in SA, there is some
    * s' in S such that forall e in E, T(se) = T(s'e).
+   *
+   * Each round adds every offending row found at once, so the new
+   * entries are asked for in a single batch.
    */
   private void makeTClosed() throws SETException {
     teacher_.println("Making T closed");
 
-    Vector offending = isTClosed();
-    while (offending != null) {
+    Collection<IntSequence> offending = isTClosed();
+    while (!offending.isEmpty()) {
       this.addToS(offending);
       offending = isTClosed();
     }
@@ -705,90 +1106,351 @@ public class SETLearner {
    * s in SA, there is some s' in S such that forall e in E, 
    * T(se) = T(s'e). 
    *
-   * @return null if T is closed, otherwise, a sequence that needs to
-   * be added to S to make T closed
+   * Only the rows on the worklist are looked at; rows found to have a
+   * match are taken off it.
+   *
+   * @return the sequences that need to be added to S to make T
+   * closed, one for each distinct row that has no match in S.  Empty
+   * if T is closed.
    */
-  private Vector isTClosed() {
-    Iterator SElems = this.getS();
-    while (SElems.hasNext()) {
-      Vector SElem = (Vector) SElems.next();
-
-      Iterator AElems = this.getA();
-      while (AElems.hasNext()) {
-        String AElem = (String) AElems.next();
+  private Collection<IntSequence> isTClosed() throws SETException {
+    if (lazy_) {
+      this.siftUnresolved();
+    }
 
-        Vector sa = new Vector();
-        sa.addAll(SElem);
-        sa.add(AElem);
+    LinkedHashMap<Row, IntSequence> offending = new LinkedHashMap<Row, IntSequence>();
 
-        if (getMatchingRow(SElem, AElem) == null) {
-          return (sa);
+    for (Iterator<IntSequence> SAElems = unresolved_.iterator(); SAElems.hasNext();) {
+      IntSequence SAElem = SAElems.next();
+      if (getMatchingRow(SAElem) == null) {
+        Row row = T_.get(SAElem);
+        if (!offending.containsKey(row)) {
+          offending.put(row, SAElem);
         }
+        continue;
       }
+
+      SAElems.remove();
     }
 
-    return (null);
+    return (new Vector<IntSequence>(offending.values()));
   }
 
+  public String printTable() {
+    StringBuilder toReturn = new StringBuilder("SET Table is:\n");
+
+    // First print the E's
+    toReturn.append("\n\nE:\n");
+    IntSequence[] sortedEElems = new IntSequence[E_.size()];
+    for (IntSequence EElem : E_.keySet()) {
+      int EIndex = this.getEIndex(EElem);
+      sortedEElems[EIndex] = EElem;
+    }
+    for (int i = 0; i < sortedEElems.length; i++) {
+      toReturn.append(i).append(":  ").append(sortedEElems[i]).append('\n');
+    }
+    toReturn.append("\n\n");
+
+    for (IntSequence SElem : S_) {
+      toReturn.append("S=").append(SElem).append("  ").append(T_.get(SElem)).append('\n');
+
+      for (int AElem = 0; AElem < symbols_.size(); AElem++) {
+        IntSequence SAElem = SElem.append(AElem);
+
+        toReturn.append("S=").append(SElem).append(" A=").append(symbols_.getSymbol(AElem)).append("  ").append(T_.get(SAElem)).append('\n');
+      }
+    }
+
+    return (toReturn.toString());
+  }
+
+  //
+  //
+  // Methods for saving the table
+  //
+  //
+
   /**
-   * Returns a string representation of a sequence
+   * Writes S, E and T, and how many counterexamples there were and when
+   * E was pruned.  Sequences are written as their length and symbol
+   * IDs, and each row as its entries and which of them are known.
    *
-   * @return a string representation of a sequence
+   * @param out where to write the table
    */
-  private static String printSequence(Vector sequence) {
-    StringBuilder toReturn = new StringBuilder();
+  void writeTable(DataOutput out) throws IOException {
+    out.writeInt(counterexamples_);
+    out.writeInt(prunedAt_);
 
-    // An empty sequence is treated as a lambda
-    if ((sequence == null) || (sequence.size() == 0)) {
-      toReturn.append("lambda");
-    } else {
-      for (int i = 0; i < sequence.size(); i++) {
-        if (i > 0) {
-          toReturn.append(", ");
+    out.writeInt(S_.size());
+    for (IntSequence SElem : S_) {
+      writeSequence(out, SElem);
+    }
+
+    // E in index order
+    out.writeInt(E_.size());
+    for (IntSequence EElem : E_.keySet()) {
+      writeSequence(out, EElem);
+    }
+
+    out.writeInt(T_.size());
+    for (Map.Entry<IntSequence, Row> entry : T_.entrySet()) {
+      writeSequence(out, entry.getKey());
+
+      byte[] bits = new byte[(E_.size() + 7) / 8];
+      byte[] known = new byte[bits.length];
+      for (int i = 0; i < E_.size(); i++) {
+        if (entry.getValue().get(i)) {
+          bits[i / 8] |= 1 << (i % 8);
+        }
+        if (entry.getValue().isKnown(i)) {
+          known[i / 8] |= 1 << (i % 8);
         }
+      }
+      out.write(bits);
+      out.write(known);
+    }
+  }
+
+  /**
+   * Replaces S, E and T with a table written by writeTable, for the
+   * same alphabet
+   *
+   * @param in where to read the table from
+   */
+  void readTable(DataInput in) throws IOException {
+    S_.clear();
+    E_.clear();
+    T_.clear();
+    pending_.clear();
+
+    counterexamples_ = in.readInt();
+    prunedAt_ = in.readInt();
+
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      S_.add(readSequence(in));
+    }
+
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      E_.put(readSequence(in), new Integer(i));
+    }
 
-        toReturn.append((String) sequence.elementAt(i));
+    count = in.readInt();
+    byte[] bits = new byte[(E_.size() + 7) / 8];
+    byte[] known = new byte[bits.length];
+    for (int i = 0; i < count; i++) {
+      IntSequence column = readSequence(in);
+      in.readFully(bits);
+      in.readFully(known);
+
+      Row row = new Row();
+      for (int j = 0; j < E_.size(); j++) {
+        if ((known[j / 8] & (1 << (j % 8))) != 0) {
+          row.set(j, (bits[j / 8] & (1 << (j % 8))) != 0);
+        }
       }
+      T_.put(column, row);
     }
 
-    return (toReturn.toString());
+    teacher_.println("Restored table with |S| = " + S_.size() + ", |E| = "
+        + E_.size());
+    this.indexRows();
   }
 
-  public String printTable() {
-    StringBuilder toReturn = new StringBuilder("SET Table is:\n");
+  /**
+   * Asks the teacher again about every entry of T, e.g. after the code
+   * of the module changed.  Elements of S whose rows are no longer
+   * distinct are dropped, along with their extensions in S, and
+   * learning goes on from what is left.
+   */
+  void revalidate() throws SETException {
+    HashMap<IntSequence, Row> old = new HashMap<IntSequence, Row>();
+    for (Map.Entry<IntSequence, Row> entry : T_.entrySet()) {
+      old.put(entry.getKey(), new Row(entry.getValue()));
+      for (Map.Entry<IntSequence, Integer> EElem : E_.entrySet()) {
+        if (entry.getValue().isKnown(EElem.getValue().intValue())) {
+          this.putEntry(entry.getKey(), -1, EElem.getKey());
+        }
+      }
+    }
+    this.flushEntries();
 
-    // First print the E's
-    toReturn.append("\n\nE:\n");
-    Vector[] sortedEElems = new Vector[E_.size()];
-    Iterator EElems = this.getE();
-    while (EElems.hasNext()) {
-      Vector EElem = (Vector) EElems.next();
-      int EIndex = this.getEIndex(EElem);
-      sortedEElems[EIndex] = EElem;
+    int changed = 0;
+    for (Map.Entry<IntSequence, Row> entry : T_.entrySet()) {
+      if (!entry.getValue().equals(old.get(entry.getKey()))) {
+        changed++;
+      }
     }
-    for (int i = 0; i < sortedEElems.length; i++) {
-      toReturn.append(i).append(":  ").append(printSequence(sortedEElems[i])).append('\n');
+
+    // S is kept in the order it was built, so a prefix always comes
+    // before its extensions
+    LinkedHashSet<IntSequence> S = new LinkedHashSet<IntSequence>();
+    HashMap<Row, IntSequence> rows = new HashMap<Row, IntSequence>();
+    for (IntSequence SElem : S_) {
+      if (((SElem.length() == 0) || S.contains(SElem.getPrefix()))
+          && !rows.containsKey(T_.get(SElem))) {
+        S.add(SElem);
+        rows.put(T_.get(SElem), SElem);
+      }
     }
-    toReturn.append("\n\n");
 
-    Iterator SElems = this.getS();
-    while (SElems.hasNext()) {
-      Vector SElem = (Vector) SElems.next();
-      toReturn.append("S=").append(printSequence(SElem)).append("  ").append(T_.get(SElem)).append('\n');
+    // Drop the rows that are neither in S nor in SA any more
+    for (Iterator<IntSequence> columns = T_.keySet().iterator(); columns.hasNext();) {
+      IntSequence column = columns.next();
+      if (!S.contains(column)
+          && ((column.length() == 0) || !S.contains(column.getPrefix()))) {
+        columns.remove();
+      }
+    }
 
-      Iterator AElems = this.getA();
-      while (AElems.hasNext()) {
-        String AElem = (String) AElems.next();
+    teacher_.println("Revalidated T: " + changed + " of " + old.size()
+        + " rows changed, " + (S_.size() - S.size()) + " elements dropped from S");
+    S_ = S;
+    this.indexRows();
+  }
 
-        Vector SAElem = new Vector();
-        SAElem.addAll(SElem);
-        SAElem.add(AElem);
+  private static void writeSequence(DataOutput out, IntSequence sequence)
+      throws IOException {
+    int[] symbols = sequence.toArray();
+    out.writeInt(symbols.length);
+    for (int i = 0; i < symbols.length; i++) {
+      out.writeInt(symbols[i]);
+    }
+  }
 
-        toReturn.append("S=").append(printSequence(SElem)).append(" A=").append(AElem).append("  ").append(T_.get(SAElem)).append('\n');
+  private IntSequence readSequence(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw (new IOException("sequence of length " + length));
+    }
+    IntSequence sequence = symbols_.lambda();
+    for (int i = 0; i < length; i++) {
+      int symbol = in.readInt();
+      if ((symbol < 0) || (symbol >= symbols_.size())) {
+        throw (new IOException("symbol " + symbol + " is not in the alphabet"));
       }
+      sequence = sequence.append(symbol);
     }
+    return (sequence);
+  }
 
-    return (toReturn.toString());
+  /**
+   * A node of the decision tree of a lazy table: either a column and
+   * the subtrees for the rows of S that reject and accept in it, or a
+   * leaf with one row of S
+   */
+  private static final class Node {
+    final int column_;
+
+    final Node rejecting_;
+
+    final Node accepting_;
+
+    final IntSequence SElem_;
+
+    Node(int column, Node rejecting, Node accepting) {
+      column_ = column;
+      rejecting_ = rejecting;
+      accepting_ = accepting;
+      SElem_ = null;
+    }
+
+    Node(IntSequence SElem) {
+      column_ = -1;
+      rejecting_ = null;
+      accepting_ = null;
+      SElem_ = SElem;
+    }
+  }
+
+  /**
+   * An entry of T waiting for the teacher's answer
+   */
+  private static final class Cell {
+    final IntSequence column_;
+
+    final IntSequence EElem_;
+
+    Cell(IntSequence column, IntSequence EElem) {
+      column_ = column;
+      EElem_ = EElem;
+    }
+  }
+
+  /**
+   * A row of T.  The hash code is kept up to date as entries change,
+   * so rows can be looked up in the row signature index without
+   * rehashing the whole BitSet.  Rows only compare their entries;
+   * which entries are known matters to a lazy table alone.
+   */
+  private static final class Row {
+    private final BitSet bits_;
+
+    private final BitSet known_;
+
+    private int hash_;
+
+    Row() {
+      bits_ = new BitSet();
+      known_ = new BitSet();
+      hash_ = 0;
+    }
+
+    Row(Row other) {
+      bits_ = (BitSet) other.bits_.clone();
+      known_ = (BitSet) other.known_.clone();
+      hash_ = other.hash_;
+    }
+
+    boolean get(int index) {
+      return (bits_.get(index));
+    }
+
+    void set(int index, boolean value) {
+      known_.set(index);
+      if (bits_.get(index) != value) {
+        bits_.flip(index);
+        hash_ ^= mix(index);
+      }
+    }
+
+    boolean isKnown(int index) {
+      return (known_.get(index));
+    }
+
+    /**
+     * Determines if the first width entries are known
+     */
+    boolean isComplete(int width) {
+      return (known_.nextClearBit(0) >= width);
+    }
+
+    /**
+     * Determines if the known entries are the same in other
+     */
+    boolean agrees(Row other) {
+      BitSet differences = (BitSet) bits_.clone();
+      differences.xor(other.bits_);
+      return (!differences.intersects(known_));
+    }
+
+    private static int mix(int index) {
+      int h = index * 0x9E3779B9;
+      return (h ^ (h >>> 16));
+    }
+
+    public int hashCode() {
+      return (hash_);
+    }
+
+    public boolean equals(Object o) {
+      return ((o instanceof Row) && bits_.equals(((Row) o).bits_));
+    }
+
+    public String toString() {
+      return (bits_.toString());
+    }
   }
 } // end class SET
 
@@ -3,12 +3,9 @@ package gov.nasa.jpf.cv;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Vector;
 
 import gov.nasa.jpf.jvm.*;
-import gov.nasa.jpf.jvm.bytecode.Instruction;
-import gov.nasa.jpf.jvm.bytecode.InvokeInstruction;
 import java.util.AbstractList;
 
 public class SafetyAutomaton {
@@ -23,21 +20,12 @@ public class SafetyAutomaton {
 
 	String automatonName;
 
-	Path counterexample;
-
 	Candidate candidate;
 
 
-	// An FSM derived from a Candidate.
-	// Maps a transition name(String) to a state (Integer).
-	private class FSMState extends HashMap<String, Integer> {
-	};
-
-	FSMState[] automaton;
-
-	// a vector of states of the automaton
-	// each element is a hashmap (FMState) that stores transitions
-	// using as key the action name and value the destination state
+	// the transitions, compiled from a Candidate, an FSM or a query,
+	// over the symbols of alphabet_
+	CompiledMonitor automaton;
 
 	public SafetyAutomaton(boolean assumption, String fsmFile) {
 		TransitionsParser tp = new TransitionsParser(fsmFile);
@@ -55,7 +43,7 @@ public class SafetyAutomaton {
 		automatonName = nm;
 		alphabet_ = alpha;
 		createAutomaton(transitions);
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 
 	public SafetyAutomaton(boolean assumption, Candidate candidate,
@@ -65,7 +53,7 @@ public class SafetyAutomaton {
 		alphabet_ = alpha;
 		this.candidate = candidate;
 		createAutomaton();
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 
 	
@@ -74,69 +62,40 @@ public class SafetyAutomaton {
 		automatonName = nm;
 		alphabet_ = new Vector<String>(fsm.getAlphabet());
 		createAutomaton(fsm);
-		System.out.println(this);
+		Trace.log(Trace.DEBUG, this);
 	}
 
 	private void createAutomaton() {
-		int numStates = candidate.numberOfStates();
-		automaton = new FSMState[numStates];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			for (String action : alphabet_) {
-				int end = candidate.getTransition(i, action);
-				if (end != -1)
-					state.put(action, end);
-			}
-		}
+		automaton = CompiledMonitor.compile(candidate, alphabet_);
 	}
 
 	private void createAutomaton(FSM fsm) {
-		int numStates = fsm.numberOfStates();
-		automaton = new FSMState[numStates];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			for (String action : alphabet_) {
-				int end = fsm.getTransition(i, action);
-				if (end != -1)
-					state.put(action, end);
-			}
-		}
+		automaton = CompiledMonitor.compile(fsm, alphabet_);
 	}
 
 	// this one creates automata for queries expressed as a
 	// vector of transitions
 	private void createAutomaton(AbstractList<String> transitions) {
-		int numStates = transitions.size();
-		automaton = new FSMState[numStates + 1];
-
-		for (int i = 0; i < numStates; i++) {
-			FSMState state = new FSMState();
-			automaton[i] = state;
-			state.put(transitions.get(i), i + 1);
-		}
-		automaton[numStates] = new FSMState();
+		automaton = CompiledMonitor.compile(transitions, alphabet_);
 	}
 
 	public void reset() {
 		currentState = 0;
 	}
 
-	public Path getCounterexample() {
-		return counterexample;
+	// the counterexample itself comes from an AlphabetTraceRecorder
+	public boolean isViolated() {
+		return !checkResult;
 	}
 
 	public void advance(String name) {
 		advance(name, null, null);
 	}
 
+	// a name that is not in the alphabet has no transition either
 	public boolean isNextStateError(String name, ThreadInfo ti, JVM jvm) {
-		
-		
-		return( (automaton[currentState].get(name) == null) ? true : false);
+		int symbol = automaton.symbolOf(name);
+		return (symbol == -1 || automaton.next(currentState, symbol) == -1);
 	}
 	
 	public boolean isAssumption() {
@@ -148,16 +107,13 @@ public class SafetyAutomaton {
 		// remember that you may need to force the thread to yield
 		// decide if we want to cut the thread info - currently not used
 		
+		// this runs for every method JPF invokes, so it must not log or
+		// allocate anything
 		int lastCurrentState = currentState;
-//		System.out.println("++++++ Action is " + name);
+		int symbol = automaton.symbolOf(name);
 		
-		if (alphabet_.contains(name) && currentState != -1) {
-
-			System.out.println("[AG REASONING] Action " + name + " is relevant for flight rule");
-			
-			Integer nextState = automaton[currentState].get(name);
-			
-			currentState = (nextState == null) ? -1 : nextState;
+		if (symbol != -1 && currentState != -1) {
+			currentState = automaton.next(currentState, symbol);
 			// ti.reschedule(true);
 		}
 
@@ -168,16 +124,10 @@ public class SafetyAutomaton {
 				if (jvm != null) 
 					jvm.getSystemState().setIgnored(true);
 				else
-					System.out
-							.println("JVM was null so could not apply assumption properly");
+					Trace.log(Trace.ERROR, "JVM was null so could not apply assumption properly");
 			} else {
 				// is property
 				checkResult = false;
-        
-        // <2DO> - see SCSafetyAutomaton.advance() for the reason why getClonedPath()
-        // does not suffice !!
-				//counterexample = jvm.getClonedPath();
-        counterexample = jvm.getPath();
 			} 			
 		}
 		
@@ -188,27 +138,21 @@ public class SafetyAutomaton {
 		// remember that you may need to force the thread to yield
 		// decide if we want to cut the thread info - currently not used
 
-		if (alphabet_.contains(name) && currentState != -1) {
-			Integer nextState = automaton[currentState].get(name);
-			return ((nextState == null) ? -1 : nextState.intValue());
+		int symbol = automaton.symbolOf(name);
+		if (symbol != -1 && currentState != -1) {
+			return (automaton.next(currentState, symbol));
 		} else
 			throw new RuntimeException();
 	}
 
 	
 	
-	public void replay(Path path_from_jpf) {
-
-		Vector<String> trace = convert(path_from_jpf);
-		replay(trace);
-	}
-
 	public void replay(Vector<String> trace) {
 		reset();
 		for (String step : trace) {
 			if (currentState != -1) {
-				Integer nextState = automaton[currentState].get(step);
-				currentState = (nextState == null) ? -1 : nextState;
+				int symbol = automaton.symbolOf(step);
+				currentState = (symbol == -1) ? -1 : automaton.next(currentState, symbol);
 			}
 		}
 	}
@@ -217,58 +161,23 @@ public class SafetyAutomaton {
 		return checkResult;
 	}
 
+	public int getCurrentState() {
+		return currentState;
+	}
+
+	public void setCurrentState(int state) {
+		currentState = state;
+	}
+
 	public String getErrorMessage() {
 		// Print info about property violation
 		return ("Property " + automatonName + " violated");
 	}
 
-	
-	 // # TO DO #
-	// move this method into some type of util package
-	
-	// converts jpf path into a vector of "actions" from alphabet
-	private Vector convert(Path path_from_jpf) {// TBD
-		Vector path = new Vector();
-		int cex_length = path_from_jpf.size(); // size;
-		Transition t;
-		Step s;
-        
-        // [pcm] we don't have to start at transition 0, since we are not interested
-        // in system initialization (this might be too restrictive in case this
-        // automaton has to watch for class init calls)
-		for (int i = 1; i < cex_length; i++) {
-			t = path_from_jpf.get(i); // should check if t is null?
-			int transition_length = t.getStepCount();
-			for (int j = 0; j < transition_length; j++) {
-				s = t.getStep(j);
-				Instruction instr = s.getInstruction();
-				if (instr instanceof InvokeInstruction) {
-					InvokeInstruction md = (InvokeInstruction) instr;
-					String word = md.getInvokedMethod().getName();
-					//System.out.println("***** Word is " + word);
-					// check if word corresponds to an action in the alphabet
-					for (int k = 0; k < alphabet_.size(); k++) {
-						String action = (String) alphabet_.elementAt(k);
-						if (word.compareTo(action) == 0)
-							path.add(action);
-					}
-				}
-			}
-		}
-		return path;
-	}
-
 	public String toString() {
 		StringBuilder result = new StringBuilder();
 		result.append("[").append(getClass().getSimpleName()).append(" ")
-				.append(currentState).append(" ");
-		for (int i = 0; i < automaton.length; i++) {
-			FSMState state = automaton[i];
-			result.append("[").append(i).append(": ").append(state).append(
-					"]; ");
-		}
-		// Remove the last "; "
-		result.setLength(result.length() - 2);
+				.append(currentState).append(" ").append(automaton);
 		return result.append("]").toString();
 	}
 
@@ -19,7 +19,17 @@ import gov.nasa.jpf.search.Search;
 public class SafetyListener extends PropertyListenerAdapter {
 
 	SafetyAutomaton P = null;
-	static int currentConfigListener = 1;
+
+	// the state of P in each state of the search, by state id, and
+	// UNKNOWN for the states it wasn't saved for. Any search can then
+	// restore P when it goes back to a state, without replaying the path
+	// that leads there.
+	static final int UNKNOWN = -2;
+
+	int[] savedStates = new int[1024];
+	{
+		Arrays.fill(savedStates, UNKNOWN);
+	}
 
     private static <T> Vector<T> newVector(T... things) {
         return new Vector<T>(Arrays.asList(things));
@@ -27,29 +37,30 @@ public class SafetyListener extends PropertyListenerAdapter {
 
 	public SafetyListener(SafetyAutomaton automaton) {
 		P = automaton;
-		System.out.println("Constructor invoked with  " + P);		
+		Trace.log(Trace.DEBUG, "Constructor invoked with  ", P);
 	}
 	
 	public SafetyListener(Config conf) {
 
+		// which safetyListener<n> keys to use, counted per Config
+		int currentConfigListener = conf.getInt("safetyListener.next", 1);
 		boolean isAssumption = false;
 		String propertyFile = conf.getString("safetyListener"+ currentConfigListener + ".assumption");
 		if (propertyFile == null) 
 			propertyFile = conf.getString("safetyListener"+ currentConfigListener + ".property");
 		else isAssumption = true;	
-		System.out.println("#Dimitra# Property file is  " + propertyFile);
+		Trace.log(Trace.DEBUG, "#Dimitra# Property file is  ", propertyFile);
 		
     if (propertyFile != null) {
-      currentConfigListener++;
+      conf.setProperty("safetyListener.next", Integer.toString(currentConfigListener + 1));
       P = new SafetyAutomaton(isAssumption, propertyFile);
-      System.out.println("#Dimitra# Automaton is  " + P);
+      Trace.log(Trace.DEBUG, "#Dimitra# Automaton is  ", P);
     }
 	}
 	
 	
-	public Path getCounterexample() {
-		if (P != null) return P.getCounterexample();
-		else return null;
+	public boolean isViolated() {
+		return (P != null) && P.isViolated();
 	}
 	
 	
@@ -64,17 +75,51 @@ public class SafetyListener extends PropertyListenerAdapter {
 				InvokeInstruction md = (InvokeInstruction) instr;
 				P.advance(md.getInvokedMethod().getName(), ti, vm);
 				// we will add this again when we know what is returned above
-
-				// maybe here you also need to "reset" the property by
-				// re-playing
-				// search.getVM().getPath() in case of bfs
 			}
 		}
 	}
 
-	// ensure that this will work when search is different than DFS
+	public void searchStarted(Search search) {
+		saveState(search.getStateId());
+	}
+
+	// a state that was visited before keeps what P was in the first time,
+	// since the search doesn't go on from it
+	public void stateAdvanced(Search search) {
+		if (search.isNewState()) {
+			saveState(search.getStateId());
+		}
+	}
+
 	public void stateBacktracked(Search search) {
-    P.replay(search.getVM().getPath()); // you need to backtrack the property
+		restoreState(search);
+	}
+
+	public void stateRestored(Search search) {
+		restoreState(search);
+	}
+
+	void saveState(int id) {
+		if (id < 0) {
+			return;
+		}
+		if (id >= savedStates.length) {
+			int length = savedStates.length;
+			savedStates = Arrays.copyOf(savedStates, Math.max(2 * length, id + 1));
+			Arrays.fill(savedStates, length, savedStates.length, UNKNOWN);
+		}
+		savedStates[id] = P.getCurrentState();
+	}
+
+	void restoreState(Search search) {
+		int id = search.getStateId();
+		if (id >= 0 && id < savedStates.length && savedStates[id] != UNKNOWN) {
+			P.setCurrentState(savedStates[id]);
+		} else {
+			// only the state the search started from can be one that
+			// wasn't saved, and P doesn't watch system initialization
+			P.reset();
+		}
 	}
 
 	public boolean check(Search search, JVM vm) {
@@ -0,0 +1,35 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * Counts the states a JPF run visits, and how many of them are new.
+ */
+public class StateCountListener extends ListenerAdapter {
+  private long newStates_ = 0;
+
+  private long visitedStates_ = 0;
+
+  public void stateAdvanced(Search search) {
+    if (search.isNewState()) {
+      newStates_++;
+    } else {
+      visitedStates_++;
+    }
+  }
+
+  /**
+   * Gets the number of new states the search reached
+   */
+  public long getNewStates() {
+    return (newStates_);
+  }
+
+  /**
+   * Gets the number of times the search reached a state it had seen
+   */
+  public long getVisitedStates() {
+    return (visitedStates_);
+  }
+}
@@ -0,0 +1,110 @@
+package gov.nasa.jpf.cv;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Interns the symbols of an alphabet as dense int IDs, in the order
+ * the alphabet is enumerated.  Each table is also the root of the
+ * IntSequences built over its symbols.
+ */
+public class SymbolTable {
+  /**
+   * The symbols, indexed by ID
+   */
+  private String[] symbols_;
+
+  /**
+   * Maps a symbol to its ID
+   */
+  private HashMap<String, Integer> ids_;
+
+  /**
+   * The empty sequence, lambda
+   */
+  private IntSequence lambda_;
+
+  /**
+   * Creates a symbol table for an alphabet.  Symbols that appear more
+   * than once keep the ID of their first occurrence.
+   *
+   * @param alphabet an Iterator over the symbols (Strings)
+   */
+  public SymbolTable(Iterator alphabet) {
+    Vector<String> symbols = new Vector<String>();
+    ids_ = new HashMap<String, Integer>();
+
+    while (alphabet.hasNext()) {
+      String symbol = (String) alphabet.next();
+      if (!ids_.containsKey(symbol)) {
+        ids_.put(symbol, new Integer(symbols.size()));
+        symbols.add(symbol);
+      }
+    }
+
+    symbols_ = symbols.toArray(new String[symbols.size()]);
+    lambda_ = new IntSequence(this);
+  }
+
+  /**
+   * Gets the number of symbols
+   *
+   * @return the size of the alphabet
+   */
+  public int size() {
+    return (symbols_.length);
+  }
+
+  /**
+   * Gets the symbol for an ID
+   *
+   * @param id the ID
+   * @return the symbol
+   */
+  public String getSymbol(int id) {
+    return (symbols_[id]);
+  }
+
+  /**
+   * Gets the ID of a symbol
+   *
+   * @param symbol the symbol
+   * @return the ID, or -1 if the symbol is not in the alphabet
+   */
+  public int getId(String symbol) {
+    Integer id = ids_.get(symbol);
+    return ((id == null) ? -1 : id.intValue());
+  }
+
+  /**
+   * Gets the empty sequence
+   *
+   * @return lambda
+   */
+  public IntSequence lambda() {
+    return (lambda_);
+  }
+
+  /**
+   * Interns a sequence of symbols
+   *
+   * @param sequence the symbols
+   * @return the interned sequence, or null if some symbol is not in
+   *         the alphabet
+   */
+  public IntSequence intern(AbstractList<String> sequence) {
+    IntSequence interned = lambda_;
+    for (int i = 0; i < sequence.size(); i++) {
+      int id = this.getId(sequence.get(i));
+      if (id < 0) {
+        return (null);
+      }
+
+      interned = interned.append(id);
+    }
+
+    return (interned);
+  }
+} // end class SymbolTable
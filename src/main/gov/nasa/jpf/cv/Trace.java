@@ -0,0 +1,223 @@
+package gov.nasa.jpf.cv;
+
+import gov.nasa.jpf.Config;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces what the learner and the listeners do, at a level that is
+ * configured once per process.  Messages are given in parts, which are
+ * only turned into a String if the level is enabled, so a message that
+ * is not traced costs little more than the check.  Parts that are
+ * expensive to build should still be guarded by isEnabled.
+ *
+ * The configuration is read from:
+ *
+ *   cv.trace.level   off, error, info (default), debug or trace
+ *   cv.trace.file    where to write, instead of System.out
+ *   cv.trace.sample  write only one of every n messages at level trace
+ *                    (default 1, all of them)
+ *   cv.trace.async   write from a background thread (default true)
+ *   cv.trace.queue   how many messages may wait for that thread
+ *                    (default 10000).  When it is full, messages at
+ *                    debug and trace are dropped rather than slowing
+ *                    down the search, and counted.  Messages at error
+ *                    and info wait until there is room.
+ *
+ * Until configure is called, messages at info and above are written to
+ * System.out right away.
+ */
+public final class Trace {
+  public static final int OFF = 0;
+
+  public static final int ERROR = 1;
+
+  public static final int INFO = 2;
+
+  public static final int DEBUG = 3;
+
+  public static final int TRACE = 4;
+
+  private static final String[] NAMES = { "off", "error", "info", "debug", "trace" };
+
+  private static volatile int level_ = INFO;
+
+  /**
+   * Where to write, or null for whatever System.out is at the time
+   */
+  private static volatile PrintStream out_ = null;
+
+  private static volatile long sample_ = 1;
+
+  private static final AtomicLong sampled_ = new AtomicLong();
+
+  private static final AtomicLong dropped_ = new AtomicLong();
+
+  /**
+   * The messages for the writer, or null to write right away.  A
+   * CountDownLatch in the queue is counted down when the writer gets
+   * to it.
+   */
+  private static volatile BlockingQueue<Object> queue_ = null;
+
+  private Trace() {
+  }
+
+  /**
+   * Configures tracing for the process.  Any messages still waiting
+   * are written first.
+   *
+   * @param conf the configuration
+   */
+  public static synchronized void configure(Config conf) {
+    flush();
+
+    String level = conf.getString("cv.trace.level", "info");
+    int index = 0;
+    while ((index < NAMES.length) && !NAMES[index].equals(level)) {
+      index++;
+    }
+    if (index == NAMES.length) {
+      System.out.println("unknown cv.trace.level: " + level + ", using info");
+      index = INFO;
+    }
+    level_ = index;
+
+    String file = conf.getString("cv.trace.file");
+    if (file != null) {
+      try {
+        out_ = new PrintStream(new FileOutputStream(file), false);
+      } catch (FileNotFoundException x) {
+        System.out.println("cannot write trace to " + file + ": " + x.getMessage());
+      }
+    }
+
+    sample_ = Math.max(1, conf.getInt("cv.trace.sample", 1));
+
+    if (conf.getBoolean("cv.trace.async", true) && (level_ != OFF)) {
+      if (queue_ == null) {
+        final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(
+            conf.getInt("cv.trace.queue", 10000));
+        Thread writer = new Thread(new Runnable() {
+          public void run() {
+            write(queue);
+          }
+        }, "trace");
+        writer.setDaemon(true);
+        writer.start();
+        queue_ = queue;
+      }
+    } else {
+      queue_ = null;
+    }
+  }
+
+  /**
+   * Determines if messages at a level are traced
+   */
+  public static boolean isEnabled(int level) {
+    return (level <= level_);
+  }
+
+  /**
+   * Traces a message
+   *
+   * @param level the level of the message
+   * @param parts the parts of the message, which are concatenated
+   */
+  public static void log(int level, Object... parts) {
+    if (level <= level_) {
+      emit(level, parts);
+    }
+  }
+
+  /**
+   * Traces a message at level trace, if it is one of the sampled ones
+   *
+   * @param parts the parts of the message, which are concatenated
+   */
+  public static void sample(Object... parts) {
+    if ((TRACE <= level_) && (sampled_.getAndIncrement() % sample_ == 0)) {
+      emit(TRACE, parts);
+    }
+  }
+
+  private static void emit(int level, Object[] parts) {
+    String message;
+    if (parts.length == 1) {
+      message = String.valueOf(parts[0]);
+    } else {
+      StringBuilder builder = new StringBuilder();
+      for (Object part : parts) {
+        builder.append(part);
+      }
+      message = builder.toString();
+    }
+
+    BlockingQueue<Object> queue = queue_;
+    if (queue == null) {
+      out().println(message);
+    } else if (level <= INFO) {
+      try {
+        queue.put(message);
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        out().println(message);
+      }
+    } else if (!queue.offer(message)) {
+      dropped_.incrementAndGet();
+    }
+  }
+
+  /**
+   * Waits until the messages traced so far are written
+   */
+  public static void flush() {
+    BlockingQueue<Object> queue = queue_;
+    if (queue != null) {
+      CountDownLatch written = new CountDownLatch(1);
+      try {
+        queue.put(written);
+        written.await();
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    long dropped = dropped_.getAndSet(0);
+    if (dropped > 0) {
+      out().println("[trace] " + dropped + " messages dropped, the queue was full");
+    }
+    out().flush();
+  }
+
+  private static PrintStream out() {
+    PrintStream out = out_;
+    return ((out == null) ? System.out : out);
+  }
+
+  /**
+   * Writes the queued messages, for the writer thread
+   */
+  private static void write(BlockingQueue<Object> queue) {
+    try {
+      while (true) {
+        Object message = queue.take();
+        if (message instanceof CountDownLatch) {
+          out().flush();
+          ((CountDownLatch) message).countDown();
+        } else {
+          out().println(message);
+        }
+      }
+    } catch (InterruptedException x) {
+      // the writer is a daemon, and only stops with the process
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package gov.nasa.jpf.cv.tools;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFShell;
+import gov.nasa.jpf.cv.Candidate;
+import gov.nasa.jpf.cv.QueryWorkerPool;
+import gov.nasa.jpf.cv.SCModularTeacher;
+import gov.nasa.jpf.cv.SymbolTable;
+import gov.nasa.jpf.cv.Trace;
+import gov.nasa.jpf.util.LogManager;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * The shell run by the child JVMs of a QueryWorkerPool.  Answers the
+ * requests of the parent on stdin/stdout with an SCModularTeacher for
+ * the same configuration, until stdin is closed.
+ */
+public class ScQueryWorker implements JPFShell {
+
+  Config conf;
+
+  public ScQueryWorker (Config conf) {
+    this.conf = conf;
+  }
+
+  public void start(String[] args){
+    // stdout belongs to the protocol, so whatever JPF and the teacher
+    // print goes to stderr
+    PrintStream replies;
+    BufferedReader requests;
+    try {
+      replies = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+      requests = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+    } catch (IOException x) {
+      x.printStackTrace();
+      return;
+    }
+    System.setOut(System.err);
+
+    // set up logging and tracing only now, whatever they print would
+    // otherwise come before READY
+    LogManager.init(conf);
+    Trace.configure(conf);
+
+    SCModularTeacher teacher = new SCModularTeacher(conf);
+    SymbolTable symbols = new SymbolTable(teacher.getAlphabet());
+    // an incremental store needs to know what each query executed
+    boolean tracking = conf.getBoolean("assumption.store.incremental");
+    replies.println(QueryWorkerPool.READY);
+
+    try {
+      for (String line = requests.readLine(); line != null; line = requests.readLine()) {
+        String[] fields = QueryWorkerPool.split(line);
+        try {
+          if (fields[0].equals(QueryWorkerPool.QUERY)) {
+            Vector<String> sequence = new Vector<String>(Arrays.asList(fields).subList(1, fields.length));
+            Vector<String> executed = tracking ? new Vector<String>() : null;
+            boolean violating = teacher.runQuery(sequence, executed);
+            replies.println(QueryWorkerPool.OK + "\t" + violating
+                + (tracking ? QueryWorkerPool.formatSequence(executed) : ""));
+
+          } else if (fields[0].equals(QueryWorkerPool.ORACLE1)) {
+            Candidate candidate = QueryWorkerPool.parseCandidate(fields, requests, symbols);
+            Vector counterexample = teacher.checkOracle1(candidate);
+            if (counterexample == null) {
+              replies.println(QueryWorkerPool.NOCEX);
+            } else {
+              replies.println(QueryWorkerPool.CEX + QueryWorkerPool.formatSequence(counterexample));
+            }
+
+          } else {
+            replies.println(QueryWorkerPool.ERROR + "\tunknown request " + fields[0]);
+          }
+        } catch (IOException x) {
+          throw x;
+        } catch (Throwable t) {
+          // report it and keep serving, the parent decides what to do
+          t.printStackTrace();
+          replies.println(QueryWorkerPool.ERROR + "\t" + String.valueOf(t).replace('\t', ' ').replace('\n', ' '));
+        }
+      }
+    } catch (IOException x) {
+      x.printStackTrace();
+    }
+    Trace.flush();
+  }
+}
@@ -3,13 +3,24 @@ package gov.nasa.jpf.cv.tools;
 
 import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPFShell;
+import gov.nasa.jpf.cv.AssumptionLearner;
 import gov.nasa.jpf.cv.Candidate;
+import gov.nasa.jpf.cv.ConformanceTester;
+import gov.nasa.jpf.cv.CounterexampleAnalyzer;
+import gov.nasa.jpf.cv.CounterexampleMinimizer;
+import gov.nasa.jpf.cv.DiscriminationTreeLearner;
+import gov.nasa.jpf.cv.LearnerCheckpoint;
+import gov.nasa.jpf.cv.LearningMetrics;
+import gov.nasa.jpf.cv.QueryStore;
 import gov.nasa.jpf.cv.SCModularTeacher;
 import gov.nasa.jpf.cv.SCSafetyAutomaton;
 import gov.nasa.jpf.cv.SETException;
 import gov.nasa.jpf.cv.SETLearner;
+import gov.nasa.jpf.cv.Trace;
 import gov.nasa.jpf.util.LogManager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Vector;
 
 public class ScRunCV implements JPFShell {
@@ -19,20 +30,106 @@ public class ScRunCV implements JPFShell {
   public ScRunCV (Config conf) {
     this.conf = conf;
     LogManager.init(conf);
+    Trace.configure(conf);
   }
 
   public void start(String[] args){
 
 		SCSafetyAutomaton property = null;
+
+		/* check the configuration before anything is started */
+		String preoracle = conf.getString("assumption.preoracle", "none");
+		ConformanceTester tester = null;
+		if (!preoracle.equals("none")) {
+			tester = ConformanceTester.create(preoracle,
+					conf.getInt("assumption.preoracle.depth", 1),
+					conf.getInt("assumption.preoracle.max_queries", 100));
+			if (tester == null) {
+				System.out.println("unknown assumption.preoracle: " + preoracle
+						+ " (use none, memo or batch)");
+				return;
+			}
+		}
+
+		String learner = conf.getString("assumption.learner", "set");
+		if (!learner.equals("set") && !learner.equals("dt")) {
+			System.out.println("unknown assumption.learner: " + learner + " (use set or dt)");
+			return;
+		}
+
+		String cexAnalysis = conf.getString("assumption.cex_analysis", "rs");
+		CounterexampleAnalyzer analyzer = CounterexampleAnalyzer.create(cexAnalysis);
+		if (analyzer == null) {
+			System.out.println("unknown assumption.cex_analysis: " + cexAnalysis
+					+ " (use rs, linear, linear_backward, exponential, all_suffixes or shahbaz_groz)");
+			return;
+		}
+
+		String cexMinimize = conf.getString("assumption.cex_minimize", "none");
+		CounterexampleMinimizer minimizer = null;
+		if (!cexMinimize.equals("none")) {
+			minimizer = CounterexampleMinimizer.create(cexMinimize,
+					conf.getInt("assumption.cex_minimize_budget", 100));
+			if (minimizer == null) {
+				System.out.println("unknown assumption.cex_minimize: " + cexMinimize
+						+ " (use none, loops or ddmin)");
+				return;
+			}
+		}
+
+		File metrics = LearningMetrics.startReport(conf);
 		/* create an alphabet -- should be read from a file */
 		Vector alpha = new Vector();
-		
-		/* create a teacher for that alphabet */
-		SCModularTeacher teacher = new SCModularTeacher(conf);
 
+		SCModularTeacher teacher = null;
+		QueryStore store = null;
     try {
-      /* run the learning algorithm */
-      SETLearner learnAssumption = new SETLearner(teacher);
+      /* create a teacher for that alphabet */
+      teacher = new SCModularTeacher(conf, args);
+
+      /* answer what earlier runs of this configuration already did */
+      store = QueryStore.create(conf, teacher);
+      teacher.setQueryStore(store);
+
+      /* test candidates against known answers before the oracles run */
+      if (tester != null) {
+        teacher.setConformanceTester(tester);
+      }
+
+      /* run the learning algorithm selected by assumption.learner */
+      AssumptionLearner learnAssumption;
+      if (learner.equals("set")) {
+        LearnerCheckpoint checkpoint = LearnerCheckpoint.create(conf, teacher);
+        SETLearner set;
+        if ((checkpoint != null) && conf.getBoolean("assumption.checkpoint.resume")
+            && checkpoint.exists()) {
+          try {
+            // with an incremental store, the code may have changed since
+            set = checkpoint.resume((store != null) && store.isIncremental());
+          } catch (IOException x) {
+            System.out.println("cannot resume: " + x.getMessage());
+            return;
+          }
+        } else {
+          set = new SETLearner(teacher);
+        }
+        set.setCounterexampleAnalyzer(analyzer);
+        set.setCounterexampleMinimizer(minimizer);
+        set.setCheckpoint(checkpoint);
+        set.setLazy(conf.getBoolean("assumption.table.lazy"));
+        set.setPruneInterval(conf.getInt("assumption.table.prune_interval", 0));
+        learnAssumption = set;
+      } else {
+        DiscriminationTreeLearner dt = new DiscriminationTreeLearner(teacher);
+        if (analyzer instanceof CounterexampleAnalyzer.BreakpointSearch) {
+          dt.setCounterexampleAnalyzer((CounterexampleAnalyzer.BreakpointSearch) analyzer);
+        } else {
+          System.out.println("assumption.cex_analysis=" + cexAnalysis
+              + " does not apply to the dt learner, using rs");
+        }
+        dt.setCounterexampleMinimizer(minimizer);
+        learnAssumption = dt;
+      }
       Candidate a = (Candidate) learnAssumption.getAssumption();
 
       String storeAssumption = conf.getProperty("assumption.outputFile");
@@ -49,6 +146,21 @@ public class ScRunCV implements JPFShell {
 
     } catch (SETException sx){
       sx.printStackTrace();
+    } finally {
+      // also when the run gives up or fails, so that the store is closed
+      // and the report and the trace are complete
+      if (tester != null) {
+        System.out.println(tester);
+      }
+      if (store != null) {
+        System.out.println(store);
+        store.close();
+      }
+      if (metrics != null) {
+        LearningMetrics.finishReport(metrics);
+        System.out.println("Wrote metrics to " + metrics);
+      }
+      Trace.flush();
     }
 	}
 }
@@ -0,0 +1,48 @@
+package gov.nasa.jpf.test.cv;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import gov.nasa.jpf.cv.AutomatonEquivalence;
+import gov.nasa.jpf.cv.Candidate;
+import gov.nasa.jpf.cv.CounterexampleAnalyzer;
+import gov.nasa.jpf.cv.DFATeacher;
+import gov.nasa.jpf.cv.RandomDFA;
+import gov.nasa.jpf.cv.SETException;
+import gov.nasa.jpf.cv.SETLearner;
+
+import org.junit.Test;
+
+/**
+ * Learns random automata with a lazy table, using the counterexample
+ * analyzers that give a set of suffixes rather than a breakpoint.  The
+ * column a row of SA was wrongly matched in need not be one of those
+ * suffixes, e.g. when it is lambda.
+ */
+public class LazyTableTest {
+  private static final int SEEDS = 20;
+
+  @Test
+  public void testAllSuffixes() throws SETException {
+    learnAll("all_suffixes");
+  }
+
+  @Test
+  public void testShahbazGroz() throws SETException {
+    learnAll("shahbaz_groz");
+  }
+
+  private static void learnAll(String analysis) throws SETException {
+    for (int seed = 0; seed < SEEDS; seed++) {
+      RandomDFA dfa = new RandomDFA(15, 3, seed);
+      SETLearner learner = new SETLearner(new DFATeacher(dfa.toFSM(), dfa.getAlphabet()));
+      learner.setLazy(true);
+      learner.setCounterexampleAnalyzer(CounterexampleAnalyzer.create(analysis));
+
+      Candidate candidate = (Candidate) learner.getAssumption();
+      assertNotNull(analysis + ", seed " + seed, candidate);
+      assertNull(analysis + ", seed " + seed,
+          AutomatonEquivalence.distinguish(candidate, dfa.toFSM(), dfa.getAlphabet()));
+    }
+  }
+}